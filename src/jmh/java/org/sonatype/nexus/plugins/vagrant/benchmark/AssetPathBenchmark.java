@@ -0,0 +1,80 @@
+package org.sonatype.nexus.plugins.vagrant.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.sonatype.nexus.plugins.vagrant.internal.VagrantAssetPath;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import static org.sonatype.nexus.plugins.vagrant.benchmark.BenchmarkFixtures.NAME;
+import static org.sonatype.nexus.plugins.vagrant.benchmark.BenchmarkFixtures.ORG;
+
+/**
+ * {@link VagrantAssetPath} against the regex and {@code String.format} it replaced; run with the GC
+ * profiler to compare allocation per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AssetPathBenchmark
+{
+  private static final Pattern ASSET_PATH_PATTERN =
+      Pattern.compile("^/([^/]+)/([^/]+)/([^/]+)/([^/]+)/[^/]+\\.box$");
+
+  private String path = "/myorg/mybox/1.2.3/virtualbox/mybox.box";
+
+  private final Map<String, String> tokens = new HashMap<>();
+
+  public AssetPathBenchmark() {
+    tokens.put("org", ORG);
+    tokens.put("name", NAME);
+    tokens.put("version", "1.2.3");
+    tokens.put("provider", "virtualbox");
+    tokens.put("filename", NAME);
+  }
+
+  @Benchmark
+  public void parseRegex(final Blackhole blackhole) {
+    Matcher matcher = ASSET_PATH_PATTERN.matcher(path);
+    if (matcher.matches() && ORG.equals(matcher.group(1)) && NAME.equals(matcher.group(2))) {
+      blackhole.consume(matcher.group(3));
+      blackhole.consume(matcher.group(4));
+    }
+  }
+
+  @Benchmark
+  public void parseOffsets(final Blackhole blackhole) {
+    VagrantAssetPath assetPath = VagrantAssetPath.parse(path);
+    if (assetPath != null && assetPath.isBox(ORG, NAME)) {
+      blackhole.consume(assetPath.version());
+      blackhole.consume(assetPath.provider());
+    }
+  }
+
+  @Benchmark
+  public String formatStringFormat() {
+    return String.format("/%s/%s/%s/%s/%s.box",
+        tokens.get("org"), tokens.get("name"), tokens.get("version"), tokens.get("provider"), tokens.get("filename"));
+  }
+
+  @Benchmark
+  public String formatBuilder() {
+    return VagrantAssetPath.format(tokens);
+  }
+}
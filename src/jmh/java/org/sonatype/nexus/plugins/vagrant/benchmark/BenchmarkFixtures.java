@@ -0,0 +1,58 @@
+package org.sonatype.nexus.plugins.vagrant.benchmark;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.sonatype.nexus.plugins.vagrant.datastore.VagrantBoxAsset;
+import org.sonatype.nexus.plugins.vagrant.datastore.internal.store.VagrantCatalogEntry;
+
+import com.google.common.hash.Hashing;
+
+/**
+ * Synthetic box data shared by the benchmarks.
+ */
+final class BenchmarkFixtures
+{
+  static final String BASE_URL = "http://nexus/repository/vagrant-hosted";
+
+  static final String ORG = "myorg";
+
+  static final String NAME = "mybox";
+
+  private static final String[] PROVIDERS = {"virtualbox", "libvirt", "vmware_desktop", "hyperv"};
+
+  private BenchmarkFixtures() {
+  }
+
+  /**
+   * Box files of /myorg/mybox in version order, four providers per version.
+   */
+  static List<VagrantBoxAsset> boxAssets(final int count) {
+    List<VagrantBoxAsset> boxAssets = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      int release = i / PROVIDERS.length;
+      String version = "1." + release / 100 + "." + release % 100;
+      String provider = PROVIDERS[i % PROVIDERS.length];
+      String path = "/" + ORG + "/" + NAME + "/" + version + "/" + provider + "/" + NAME + ".box";
+      boxAssets.add(new VagrantCatalogEntry(path, version, provider, Hashing.sha256().hashInt(i).toString()));
+    }
+    return boxAssets;
+  }
+
+  /**
+   * Interface stub answering the named no-argument methods with fixed values, cheaper to call than a mock.
+   */
+  static <T> T stub(final Class<T> type, final Map<String, Object> answers) {
+    return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+      if (answers.containsKey(method.getName())) {
+        return answers.get(method.getName());
+      }
+      if ("toString".equals(method.getName())) {
+        return type.getSimpleName();
+      }
+      throw new UnsupportedOperationException(method.toString());
+    }));
+  }
+}
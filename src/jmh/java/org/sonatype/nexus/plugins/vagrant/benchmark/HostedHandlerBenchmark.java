@@ -0,0 +1,147 @@
+package org.sonatype.nexus.plugins.vagrant.benchmark;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.sonatype.nexus.plugins.vagrant.datastore.VagrantContentFacet;
+import org.sonatype.nexus.plugins.vagrant.datastore.internal.VagrantAdmissionFacet;
+import org.sonatype.nexus.plugins.vagrant.datastore.internal.VagrantAdmissionLimiter;
+import org.sonatype.nexus.plugins.vagrant.datastore.internal.VagrantHostedHandler;
+import org.sonatype.nexus.plugins.vagrant.datastore.internal.VagrantMetadataCache;
+import org.sonatype.nexus.plugins.vagrant.internal.VagrantMetadataBuilder;
+import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.view.Context;
+import org.sonatype.nexus.repository.view.Request;
+import org.sonatype.nexus.repository.view.Response;
+import org.sonatype.nexus.repository.view.matchers.token.TokenMatcher;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.net.HttpHeaders;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static org.sonatype.nexus.plugins.vagrant.benchmark.BenchmarkFixtures.BASE_URL;
+import static org.sonatype.nexus.plugins.vagrant.benchmark.BenchmarkFixtures.NAME;
+import static org.sonatype.nexus.plugins.vagrant.benchmark.BenchmarkFixtures.ORG;
+import static org.sonatype.nexus.repository.http.HttpMethods.GET;
+
+/**
+ * {@link VagrantHostedHandler#handle} for catalog and latest-redirect requests against an
+ * {@link InMemoryVagrantContentFacet}. With {@code cached=false} the metadata cache has no budget,
+ * so every catalog request renders and compresses the catalog.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HostedHandlerBenchmark
+{
+  @Param({"10", "100", "1000", "10000", "100000"})
+  public int assetCount;
+
+  @Param({"false", "true"})
+  public boolean cached;
+
+  @Param({"false", "true"})
+  public boolean gzip;
+
+  private VagrantHostedHandler handler;
+
+  private Context catalogContext;
+
+  private Context latestContext;
+
+  @Setup
+  public void setUp() {
+    handler = new VagrantHostedHandler(new VagrantMetadataBuilder(),
+        new VagrantMetadataCache(cached ? 1L << 30 : 0L, 3600));
+
+    VagrantContentFacet contentFacet =
+        InMemoryVagrantContentFacet.create(ORG, NAME, BenchmarkFixtures.boxAssets(assetCount));
+    Repository repository = repository(ImmutableMap.of(
+        VagrantContentFacet.class, contentFacet,
+        VagrantAdmissionFacet.class, new UnlimitedAdmissionFacet()));
+
+    catalogContext = context(repository, "/" + ORG + "/" + NAME, tokens());
+
+    Map<String, String> latestTokens = tokens();
+    latestTokens.put("provider", "libvirt");
+    latestContext = context(repository, "/" + ORG + "/" + NAME + "/latest/libvirt", latestTokens);
+  }
+
+  @Benchmark
+  public Response getCatalog() throws Exception {
+    return handler.handle(catalogContext);
+  }
+
+  @Benchmark
+  public Response getLatest() throws Exception {
+    return handler.handle(latestContext);
+  }
+
+  private Context context(final Repository repository, final String path, final Map<String, String> tokens) {
+    Request request = new Request.Builder().action(GET).path(path).build();
+    if (gzip) {
+      request.getHeaders().set(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate");
+    }
+    Context context = new Context(repository, request);
+    context.getAttributes().set(TokenMatcher.State.class,
+        BenchmarkFixtures.stub(TokenMatcher.State.class, ImmutableMap.of("getTokens", tokens)));
+    return context;
+  }
+
+  /**
+   * Repository stub answering {@code facet(type)} from the given facets.
+   */
+  private static Repository repository(final Map<Class<?>, Object> facets) {
+    return (Repository) Proxy.newProxyInstance(Repository.class.getClassLoader(), new Class<?>[]{Repository.class},
+        (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getName":
+              return "vagrant-hosted";
+            case "getUrl":
+              return BASE_URL;
+            case "facet":
+              return facets.get(args[0]);
+            case "toString":
+              return "Repository";
+            default:
+              throw new UnsupportedOperationException(method.toString());
+          }
+        });
+  }
+
+  private static Map<String, String> tokens() {
+    Map<String, String> tokens = new HashMap<>();
+    tokens.put("org", ORG);
+    tokens.put("name", NAME);
+    return tokens;
+  }
+
+  /**
+   * Admits every catalog build, so uncached runs measure rendering rather than queueing.
+   */
+  private static final class UnlimitedAdmissionFacet
+      extends VagrantAdmissionFacet
+  {
+    private final VagrantAdmissionLimiter catalogBuilds = new VagrantAdmissionLimiter(Integer.MAX_VALUE, 0, 0);
+
+    @Override
+    public VagrantAdmissionLimiter catalogBuilds() {
+      return catalogBuilds;
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package org.sonatype.nexus.plugins.vagrant.benchmark;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.sonatype.nexus.plugins.vagrant.datastore.VagrantBoxAsset;
+import org.sonatype.nexus.plugins.vagrant.datastore.VagrantBoxCatalog;
+import org.sonatype.nexus.plugins.vagrant.datastore.VagrantContentFacet;
+import org.sonatype.nexus.plugins.vagrant.datastore.internal.store.VagrantCatalogData;
+import org.sonatype.nexus.plugins.vagrant.internal.VagrantMetadataBuilder;
+
+/**
+ * {@link VagrantContentFacet} backed by maps, so handler benchmarks measure the handler rather than the database.
+ *
+ * Only the read methods are implemented; everything else, including the {@code ContentFacet} plumbing,
+ * throws {@link UnsupportedOperationException}.
+ */
+final class InMemoryVagrantContentFacet
+    implements InvocationHandler
+{
+  private final Map<String, VagrantBoxCatalog> catalogs = new HashMap<>();
+
+  private final VagrantMetadataBuilder metadataBuilder = new VagrantMetadataBuilder();
+
+  private InMemoryVagrantContentFacet() {
+  }
+
+  static VagrantContentFacet create(final String org, final String name, final List<VagrantBoxAsset> sortedAssets) {
+    InMemoryVagrantContentFacet handler = new InMemoryVagrantContentFacet();
+    handler.catalogs.put(key(org, name),
+        VagrantCatalogData.of(1, org, name, sortedAssets, handler.metadataBuilder.stamp(sortedAssets),
+            handler.metadataBuilder.renderedSize(org, name, sortedAssets)));
+    return (VagrantContentFacet) Proxy.newProxyInstance(VagrantContentFacet.class.getClassLoader(),
+        new Class<?>[]{VagrantContentFacet.class}, handler);
+  }
+
+  @Override
+  public Object invoke(final Object proxy, final Method method, final Object[] args) {
+    switch (method.getName()) {
+      case "get":
+      case "head":
+        return Optional.empty();
+      case "getCatalog":
+        return Optional.ofNullable(catalogs.get(key((String) args[0], (String) args[1])));
+      case "toString":
+        return "InMemoryVagrantContentFacet";
+      default:
+        throw new UnsupportedOperationException(method.toString());
+    }
+  }
+
+  private static String key(final String org, final String name) {
+    return org + '/' + name;
+  }
+}
@@ -0,0 +1,62 @@
+package org.sonatype.nexus.plugins.vagrant.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.sonatype.nexus.plugins.vagrant.datastore.VagrantBoxAsset;
+import org.sonatype.nexus.plugins.vagrant.internal.VagrantMetadataBuilder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static org.sonatype.nexus.plugins.vagrant.benchmark.BenchmarkFixtures.BASE_URL;
+import static org.sonatype.nexus.plugins.vagrant.benchmark.BenchmarkFixtures.NAME;
+import static org.sonatype.nexus.plugins.vagrant.benchmark.BenchmarkFixtures.ORG;
+
+/**
+ * Catalog rendering for one box: the streaming {@code writeJson} the handler serves, and the
+ * {@code renderedSize} recorded with the catalog row on every save.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetadataBuilderBenchmark
+{
+  @Param({"10", "100", "1000", "10000", "100000"})
+  public int assetCount;
+
+  private final VagrantMetadataBuilder metadataBuilder = new VagrantMetadataBuilder();
+
+  private List<VagrantBoxAsset> boxAssets;
+
+  @Setup
+  public void setUp() {
+    boxAssets = BenchmarkFixtures.boxAssets(assetCount);
+  }
+
+  @Benchmark
+  public byte[] writeJson() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(assetCount * 256);
+    metadataBuilder.writeJson(BASE_URL, ORG, NAME, boxAssets, out);
+    return out.toByteArray();
+  }
+
+  @Benchmark
+  public long renderedSize() {
+    return metadataBuilder.renderedSize(ORG, NAME, boxAssets);
+  }
+}
@@ -0,0 +1,19 @@
+package org.sonatype.nexus.plugins.vagrant.datastore;
+
+import org.sonatype.nexus.repository.Facet;
+
+/**
+ * Uploads and catalog builds a repository has admitted, and those waiting for a slot, on this node.
+ */
+@Facet.Exposed
+public interface VagrantAdmission
+    extends Facet
+{
+  int uploadsInFlight();
+
+  int uploadsQueued();
+
+  int catalogBuildsInFlight();
+
+  int catalogBuildsQueued();
+}
@@ -0,0 +1,26 @@
+package org.sonatype.nexus.plugins.vagrant.datastore;
+
+import javax.annotation.Nullable;
+
+/**
+ * A single box file of a Vagrant box: one provider of one version.
+ *
+ * This is the projection the catalog is built from, fetched for a whole box in one query.
+ */
+public interface VagrantBoxAsset
+{
+  /**
+   * Asset path, in the form /{org}/{name}/{version}/{provider}/{filename}.box
+   */
+  String path();
+
+  String version();
+
+  String provider();
+
+  /**
+   * SHA-256 of the box file, if its blob has been recorded.
+   */
+  @Nullable
+  String sha256();
+}
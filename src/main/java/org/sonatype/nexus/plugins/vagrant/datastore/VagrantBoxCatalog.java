@@ -0,0 +1,39 @@
+package org.sonatype.nexus.plugins.vagrant.datastore;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+/**
+ * Materialized catalog of a Vagrant box, maintained whenever one of its box files is stored or deleted.
+ */
+public interface VagrantBoxCatalog
+{
+  /**
+   * Box files of this box, ordered by version from oldest to newest.
+   */
+  List<VagrantBoxAsset> assets();
+
+  /**
+   * Number of box files of this box.
+   */
+  int boxCount();
+
+  /**
+   * Size in bytes of the compact catalog JSON rendered against an empty base URL, or {@code null} for
+   * catalogs written before it was recorded.
+   */
+  @Nullable
+  Long renderedSize();
+
+  /**
+   * Change stamp identifying the current set of box files and their checksums.
+   */
+  String stamp();
+
+  /**
+   * When a box file of this box was last stored or deleted.
+   */
+  OffsetDateTime lastUpdated();
+}
@@ -1,24 +1,87 @@
 package org.sonatype.nexus.plugins.vagrant.datastore;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
+import javax.annotation.Nullable;
+
+import org.sonatype.nexus.common.hash.HashAlgorithm;
 import org.sonatype.nexus.repository.Facet;
+import org.sonatype.nexus.repository.InvalidContentException;
 import org.sonatype.nexus.repository.content.facet.ContentFacet;
 import org.sonatype.nexus.repository.content.fluent.FluentAsset;
 import org.sonatype.nexus.repository.view.Content;
 import org.sonatype.nexus.repository.view.Payload;
 
+import com.google.common.hash.HashCode;
+
 @Facet.Exposed
 public interface VagrantContentFacet
     extends ContentFacet
 {
   Optional<Content> get(String path);
 
+  /**
+   * Returns the size, content type and validators of a box file from its asset and asset blob rows,
+   * without opening the blob; the blob is only read if the payload is.
+   */
+  Optional<Content> head(String path);
+
   FluentAsset put(String path, Payload payload, String org, String name,
                   String version, String provider) throws IOException;
 
+  /**
+   * Stores a box file whose SHA-256 the client declared. The SHA-256 computed while the payload is
+   * ingested is compared once it ends; on a mismatch nothing is stored.
+   *
+   * @throws InvalidContentException if the payload does not have the expected SHA-256
+   */
+  FluentAsset put(String path, Payload payload, @Nullable HashCode expectedSha256, String org, String name,
+                  String version, String provider) throws IOException;
+
+  /**
+   * Stores a box file staged on local disk whose SHA-1 and SHA-256 are already known.
+   */
+  FluentAsset put(String path, Path file, Map<HashAlgorithm, HashCode> hashes, String org, String name,
+                  String version, String provider) throws IOException;
+
+  /**
+   * Stores box files of one version, typically one per provider, in a single transaction, so clients
+   * never see the version with only some of them.
+   */
+  List<FluentAsset> putVersion(String org, String name, String version, List<VagrantStagedBox> boxes)
+      throws IOException;
+
   boolean delete(String path);
 
-  Iterable<FluentAsset> getBoxAssets(String org, String name);
+  /**
+   * Deletes every box file of /{org}/{name}, or only those of one version, in batched transactions,
+   * together with the components left without box files.
+   *
+   * @return the number of box files deleted
+   */
+  int deleteBox(String org, String name, @Nullable String version);
+
+  /**
+   * Returns the materialized catalog of /{org}/{name}, or empty if the box has no box files.
+   */
+  Optional<VagrantBoxCatalog> getCatalog(String org, String name);
+
+  /**
+   * Rewrites the materialized catalog of /{org}/{name} if its box files changed without going through this
+   * facet, e.g. deleted from the UI, by the components API or by a cleanup policy. Boxes without a catalog
+   * row are left to {@link #getCatalog}, which materializes them on first read.
+   *
+   * @return whether the catalog row changed
+   */
+  boolean refreshCatalog(String org, String name);
+
+  /**
+   * Drops every materialized catalog of the repository, to be rebuilt on first read; for changes that do
+   * not say which boxes they touched, such as purges.
+   */
+  void resetCatalogs();
 }
@@ -0,0 +1,54 @@
+package org.sonatype.nexus.plugins.vagrant.datastore;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+import org.sonatype.nexus.common.hash.HashAlgorithm;
+
+import com.google.common.hash.HashCode;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A box file staged on local disk, with its SHA-1 and SHA-256 already known, waiting to be stored.
+ */
+public final class VagrantStagedBox
+{
+  private final String path;
+
+  private final String provider;
+
+  private final Path file;
+
+  private final Map<HashAlgorithm, HashCode> hashes;
+
+  public VagrantStagedBox(final String path,
+                          final String provider,
+                          final Path file,
+                          final Map<HashAlgorithm, HashCode> hashes)
+  {
+    this.path = checkNotNull(path);
+    this.provider = checkNotNull(provider);
+    this.file = checkNotNull(file);
+    this.hashes = checkNotNull(hashes);
+  }
+
+  /**
+   * Asset path, in the form /{org}/{name}/{version}/{provider}/{filename}.box
+   */
+  public String path() {
+    return path;
+  }
+
+  public String provider() {
+    return provider;
+  }
+
+  public Path file() {
+    return file;
+  }
+
+  public Map<HashAlgorithm, HashCode> hashes() {
+    return hashes;
+  }
+}
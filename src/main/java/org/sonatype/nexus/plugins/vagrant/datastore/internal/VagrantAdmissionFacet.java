@@ -0,0 +1,138 @@
+package org.sonatype.nexus.plugins.vagrant.datastore.internal;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Named;
+import javax.validation.constraints.Min;
+import javax.validation.groups.Default;
+
+import org.sonatype.nexus.plugins.vagrant.datastore.VagrantAdmission;
+import org.sonatype.nexus.plugins.vagrant.internal.VagrantFormat;
+import org.sonatype.nexus.repository.Facet;
+import org.sonatype.nexus.repository.FacetSupport;
+import org.sonatype.nexus.repository.config.Configuration;
+import org.sonatype.nexus.repository.config.ConfigurationFacet;
+
+/**
+ * Per-repository limits on expensive operations, read from the {@value VagrantFormat#NAME} section of the
+ * repository configuration. Reconfiguring replaces the limiters; operations admitted by the old ones finish
+ * against them.
+ */
+@Facet.Exposed
+@Named
+public class VagrantAdmissionFacet
+    extends FacetSupport
+    implements VagrantAdmission
+{
+  public static final String CONFIG_KEY = VagrantFormat.NAME;
+
+  static class Config
+  {
+    @Min(1)
+    public int uploadConcurrency = 8;
+
+    @Min(0)
+    public int uploadQueueSize = 16;
+
+    @Min(0)
+    public int uploadQueueTimeoutSeconds = 30;
+
+    @Min(1)
+    public int catalogBuildConcurrency = 4;
+
+    @Min(0)
+    public int catalogBuildQueueSize = 32;
+
+    @Min(0)
+    public int catalogBuildQueueTimeoutSeconds = 5;
+
+    public boolean serveStaleCatalogs;
+
+    @Override
+    public String toString() {
+      return getClass().getSimpleName() + "{" +
+          "uploadConcurrency=" + uploadConcurrency +
+          ", uploadQueueSize=" + uploadQueueSize +
+          ", uploadQueueTimeoutSeconds=" + uploadQueueTimeoutSeconds +
+          ", catalogBuildConcurrency=" + catalogBuildConcurrency +
+          ", catalogBuildQueueSize=" + catalogBuildQueueSize +
+          ", catalogBuildQueueTimeoutSeconds=" + catalogBuildQueueTimeoutSeconds +
+          ", serveStaleCatalogs=" + serveStaleCatalogs +
+          '}';
+    }
+  }
+
+  private volatile VagrantAdmissionLimiter uploads;
+
+  private volatile VagrantAdmissionLimiter catalogBuilds;
+
+  private volatile boolean serveStaleCatalogs;
+
+  @Override
+  protected void doValidate(final Configuration configuration) throws Exception {
+    facet(ConfigurationFacet.class).validateSection(configuration, CONFIG_KEY, Config.class,
+        Default.class, getRepository().getType().getValidationGroup());
+  }
+
+  @Override
+  protected void doConfigure(final Configuration configuration) throws Exception {
+    Config config = facet(ConfigurationFacet.class).readSection(configuration, CONFIG_KEY, Config.class);
+    log.debug("Config: {}", config);
+    uploads = new VagrantAdmissionLimiter(config.uploadConcurrency, config.uploadQueueSize,
+        TimeUnit.SECONDS.toMillis(config.uploadQueueTimeoutSeconds));
+    catalogBuilds = new VagrantAdmissionLimiter(config.catalogBuildConcurrency, config.catalogBuildQueueSize,
+        TimeUnit.SECONDS.toMillis(config.catalogBuildQueueTimeoutSeconds));
+    serveStaleCatalogs = config.serveStaleCatalogs;
+  }
+
+  @Override
+  protected void doDestroy() throws Exception {
+    uploads = null;
+    catalogBuilds = null;
+  }
+
+  /**
+   * Limits box file uploads streaming into the blob store.
+   */
+  public VagrantAdmissionLimiter uploads() {
+    return uploads;
+  }
+
+  /**
+   * Limits catalogs rendered from the database on cache misses.
+   */
+  public VagrantAdmissionLimiter catalogBuilds() {
+    return catalogBuilds;
+  }
+
+  @Override
+  public int uploadsInFlight() {
+    VagrantAdmissionLimiter limiter = uploads;
+    return limiter != null ? limiter.inFlight() : 0;
+  }
+
+  @Override
+  public int uploadsQueued() {
+    VagrantAdmissionLimiter limiter = uploads;
+    return limiter != null ? limiter.queued() : 0;
+  }
+
+  @Override
+  public int catalogBuildsInFlight() {
+    VagrantAdmissionLimiter limiter = catalogBuilds;
+    return limiter != null ? limiter.inFlight() : 0;
+  }
+
+  @Override
+  public int catalogBuildsQueued() {
+    VagrantAdmissionLimiter limiter = catalogBuilds;
+    return limiter != null ? limiter.queued() : 0;
+  }
+
+  /**
+   * Whether a box's previous catalog may be served while it is rebuilt, instead of waiting for a build slot.
+   */
+  public boolean serveStaleCatalogs() {
+    return serveStaleCatalogs;
+  }
+}
@@ -0,0 +1,83 @@
+package org.sonatype.nexus.plugins.vagrant.datastore.internal;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Admits up to a fixed number of concurrent operations; further callers wait in a bounded queue for a bounded
+ * time, and are turned away once the queue is full or their wait runs out.
+ */
+public final class VagrantAdmissionLimiter
+{
+  private final int limit;
+
+  private final int queueSize;
+
+  private final long queueTimeoutMillis;
+
+  private final Semaphore permits;
+
+  private final AtomicInteger queued = new AtomicInteger();
+
+  public VagrantAdmissionLimiter(final int limit, final int queueSize, final long queueTimeoutMillis) {
+    checkArgument(limit > 0, "limit must be positive");
+    checkArgument(queueSize >= 0, "queueSize must not be negative");
+    checkArgument(queueTimeoutMillis >= 0, "queueTimeoutMillis must not be negative");
+    this.limit = limit;
+    this.queueSize = queueSize;
+    this.queueTimeoutMillis = queueTimeoutMillis;
+    this.permits = new Semaphore(limit, true);
+  }
+
+  /**
+   * Admits the caller, waiting in the queue up to the queue timeout if all slots are taken; every admission
+   * must be followed by {@link #release()}.
+   *
+   * @return false, without waiting, if the queue is full; false if no slot freed up within the queue timeout
+   */
+  public boolean acquire() throws InterruptedException {
+    if (permits.tryAcquire()) {
+      return true;
+    }
+    if (queued.incrementAndGet() > queueSize) {
+      queued.decrementAndGet();
+      return false;
+    }
+    try {
+      return permits.tryAcquire(queueTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+    finally {
+      queued.decrementAndGet();
+    }
+  }
+
+  /**
+   * Admits the caller only if a slot is free right now.
+   */
+  public boolean tryAcquire() {
+    return permits.tryAcquire();
+  }
+
+  public void release() {
+    permits.release();
+  }
+
+  public int limit() {
+    return limit;
+  }
+
+  public int queueSize() {
+    return queueSize;
+  }
+
+  public int inFlight() {
+    return limit - permits.availablePermits();
+  }
+
+  public int queued() {
+    return queued.get();
+  }
+}
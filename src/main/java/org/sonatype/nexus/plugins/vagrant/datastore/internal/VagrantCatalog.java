@@ -0,0 +1,123 @@
+package org.sonatype.nexus.plugins.vagrant.datastore.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPOutputStream;
+
+import org.sonatype.nexus.repository.view.Content;
+import org.sonatype.nexus.repository.view.payloads.BytesPayload;
+import org.sonatype.nexus.repository.view.payloads.StreamPayload;
+
+import org.joda.time.DateTime;
+
+/**
+ * A rendered box catalog together with its validators and a precompressed gzip variant.
+ */
+public class VagrantCatalog
+{
+  public static final String CONTENT_TYPE = "application/json";
+
+  /**
+   * Suffix distinguishing the ETag of the gzip representation from the identity one.
+   */
+  private static final String GZIP_ETAG_SUFFIX = "--gzip";
+
+  private final String baseUrl;
+
+  private final byte[] json;
+
+  private final byte[] gzipJson;
+
+  private final String etag;
+
+  private final DateTime lastModified;
+
+  public VagrantCatalog(final String baseUrl, final byte[] json, final String etag, final DateTime lastModified) {
+    this.baseUrl = baseUrl;
+    this.json = json;
+    this.gzipJson = gzip(json);
+    this.etag = etag;
+    this.lastModified = lastModified;
+  }
+
+  /**
+   * Base URL the download URLs in this catalog were rendered against.
+   */
+  public String getBaseUrl() {
+    return baseUrl;
+  }
+
+  public byte[] getJson() {
+    return json;
+  }
+
+  public byte[] getGzipJson() {
+    return gzipJson;
+  }
+
+  public String getETag() {
+    return etag;
+  }
+
+  public DateTime getLastModified() {
+    return lastModified;
+  }
+
+  /**
+   * Bytes held by this catalog, for cache weighing.
+   */
+  public int size() {
+    return json.length + gzipJson.length;
+  }
+
+  /**
+   * Content carrying the ETag and Last-Modified attributes used by the conditional request handler.
+   *
+   * @param gzip whether to return the gzip-encoded representation; the caller sets Content-Encoding
+   */
+  public Content toContent(final boolean gzip) {
+    return withValidators(new Content(new BytesPayload(gzip ? gzipJson : json, CONTENT_TYPE)),
+        etag, lastModified, gzip);
+  }
+
+  /**
+   * Identity content for a catalog that has not been rendered, carrying only its size and validators; enough
+   * to answer HEAD. The payload renders the catalog if read.
+   */
+  public static Content unrendered(final StreamPayload.InputStreamSupplier renderer,
+                                   final long size,
+                                   final String etag,
+                                   final DateTime lastModified)
+  {
+    return withValidators(new Content(new StreamPayload(renderer, size, CONTENT_TYPE)), etag, lastModified, false);
+  }
+
+  /**
+   * ETag of the identity or gzip representation of a catalog with the given ETag.
+   */
+  public static String etag(final String etag, final boolean gzip) {
+    return gzip ? etag + GZIP_ETAG_SUFFIX : etag;
+  }
+
+  private static Content withValidators(final Content content,
+                                        final String etag,
+                                        final DateTime lastModified,
+                                        final boolean gzip)
+  {
+    content.getAttributes().set(Content.CONTENT_ETAG, etag(etag, gzip));
+    content.getAttributes().set(Content.CONTENT_LAST_MODIFIED, lastModified);
+    return content;
+  }
+
+  private static byte[] gzip(final byte[] bytes) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, bytes.length / 8));
+    try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+      gzip.write(bytes);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return out.toByteArray();
+  }
+}
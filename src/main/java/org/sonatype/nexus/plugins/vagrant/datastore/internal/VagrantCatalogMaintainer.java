@@ -0,0 +1,113 @@
+package org.sonatype.nexus.plugins.vagrant.datastore.internal;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.sonatype.goodies.common.ComponentSupport;
+import org.sonatype.nexus.common.event.EventAware;
+import org.sonatype.nexus.plugins.vagrant.datastore.VagrantContentFacet;
+import org.sonatype.nexus.plugins.vagrant.internal.VagrantAssetPath;
+import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.content.event.asset.AssetDeletedEvent;
+import org.sonatype.nexus.repository.content.event.asset.AssetPurgedEvent;
+import org.sonatype.nexus.repository.content.event.component.ComponentDeletedEvent;
+import org.sonatype.nexus.repository.content.event.component.ComponentPurgedEvent;
+
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.Subscribe;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Keeps the materialized catalogs in step with box files deleted without going through
+ * {@link VagrantContentFacet}: from the UI, the components API, cleanup policies or purges.
+ *
+ * Deletes name their box, whose catalog row is refreshed before its cached catalog is invalidated, so a
+ * rebuild never reads the old row. Deletes of one box arriving while its catalog is being refreshed are
+ * coalesced into a single further refresh, so a bulk delete does not refresh the catalog once per box file.
+ * Purges only carry ids, so every catalog of the repository is dropped
+ * and rebuilt on its next read.
+ */
+@Named
+@Singleton
+public class VagrantCatalogMaintainer
+    extends ComponentSupport
+    implements EventAware, EventAware.Asynchronous
+{
+  private final VagrantMetadataCache metadataCache;
+
+  /**
+   * Boxes whose catalog is being refreshed, mapped to whether another delete arrived since the refresh began.
+   */
+  private final ConcurrentMap<String, Boolean> refreshing = new ConcurrentHashMap<>();
+
+  @Inject
+  public VagrantCatalogMaintainer(final VagrantMetadataCache metadataCache) {
+    this.metadataCache = checkNotNull(metadataCache);
+  }
+
+  @Subscribe
+  @AllowConcurrentEvents
+  public void on(final AssetDeletedEvent event) {
+    event.getRepository().ifPresent(repository -> {
+      VagrantAssetPath assetPath = VagrantAssetPath.parse(event.getAsset().path());
+      if (assetPath != null) {
+        refresh(repository, assetPath.org(), assetPath.name());
+      }
+    });
+  }
+
+  @Subscribe
+  @AllowConcurrentEvents
+  public void on(final ComponentDeletedEvent event) {
+    event.getRepository().ifPresent(repository ->
+        refresh(repository, event.getComponent().namespace(), event.getComponent().name()));
+  }
+
+  @Subscribe
+  @AllowConcurrentEvents
+  public void on(final AssetPurgedEvent event) {
+    event.getRepository().ifPresent(this::reset);
+  }
+
+  @Subscribe
+  @AllowConcurrentEvents
+  public void on(final ComponentPurgedEvent event) {
+    event.getRepository().ifPresent(this::reset);
+  }
+
+  private void refresh(final Repository repository, final String org, final String name) {
+    repository.optionalFacet(VagrantContentFacet.class).ifPresent(contentFacet -> {
+      String key = repository.getName() + '/' + org + '/' + name;
+      if (refreshing.merge(key, false, (again, ignored) -> true)) {
+        // the refresh in flight runs once more and sees this delete
+        return;
+      }
+      try {
+        do {
+          // deletes made through the facet already rewrote the row and invalidated the cache
+          if (contentFacet.refreshCatalog(org, name)) {
+            log.debug("Refreshed catalog of {}/{} in {} after a delete", org, name, repository.getName());
+            metadataCache.invalidate(repository.getName(), org, name);
+          }
+        }
+        while (refreshing.computeIfPresent(key, (k, again) -> again ? false : null) != null);
+      }
+      catch (RuntimeException e) {
+        refreshing.remove(key);
+        throw e;
+      }
+    });
+  }
+
+  private void reset(final Repository repository) {
+    repository.optionalFacet(VagrantContentFacet.class).ifPresent(contentFacet -> {
+      contentFacet.resetCatalogs();
+      metadataCache.invalidateRepository(repository.getName());
+    });
+  }
+}
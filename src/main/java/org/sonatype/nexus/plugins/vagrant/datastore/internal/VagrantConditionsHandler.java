@@ -0,0 +1,139 @@
+package org.sonatype.nexus.plugins.vagrant.datastore.internal;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.sonatype.goodies.common.ComponentSupport;
+import org.sonatype.nexus.repository.view.Context;
+import org.sonatype.nexus.repository.view.Handler;
+import org.sonatype.nexus.repository.view.Request;
+import org.sonatype.nexus.repository.view.Response;
+
+import com.google.common.base.Joiner;
+import com.google.common.net.HttpHeaders;
+import org.joda.time.DateTime;
+
+/**
+ * Keeps If-None-Match and If-Modified-Since of a catalog request in context attributes. It runs ahead of the
+ * conditional request handler, which removes them from the request while it proceeds, so
+ * {@link VagrantHostedHandler} can answer a catalog missing from the cache with 304 before rendering it.
+ */
+@Named
+@Singleton
+public class VagrantConditionsHandler
+    extends ComponentSupport
+    implements Handler
+{
+  private static final String IF_NONE_MATCH = VagrantConditionsHandler.class.getName() + ".ifNoneMatch";
+
+  private static final String IF_MODIFIED_SINCE = VagrantConditionsHandler.class.getName() + ".ifModifiedSince";
+
+  @Nonnull
+  @Override
+  public Response handle(@Nonnull final Context context) throws Exception {
+    Request request = context.getRequest();
+    String ifNoneMatch = header(request, HttpHeaders.IF_NONE_MATCH);
+    if (ifNoneMatch != null) {
+      context.getAttributes().set(IF_NONE_MATCH, ifNoneMatch);
+    }
+    String ifModifiedSince = header(request, HttpHeaders.IF_MODIFIED_SINCE);
+    if (ifModifiedSince != null) {
+      context.getAttributes().set(IF_MODIFIED_SINCE, ifModifiedSince);
+    }
+    return context.proceed();
+  }
+
+  /**
+   * Whether a representation with these validators is one the client already holds: If-None-Match lists its
+   * entity tag or is {@code *}, or, without If-None-Match, it was not modified since If-Modified-Since.
+   * Conditions are read from the attributes this handler set, else from the request.
+   */
+  static boolean notModified(final Context context, final String etag, final DateTime lastModified) {
+    String ifNoneMatch = condition(context, IF_NONE_MATCH, HttpHeaders.IF_NONE_MATCH);
+    if (ifNoneMatch != null) {
+      List<String> tags = Collections.singletonList(ifNoneMatch);
+      return listsWildcard(tags) || listsTag(tags, etag);
+    }
+    String ifModifiedSince = condition(context, IF_MODIFIED_SINCE, HttpHeaders.IF_MODIFIED_SINCE);
+    if (ifModifiedSince != null) {
+      DateTime since = parseHttpDate(ifModifiedSince);
+      return since != null && !lastModified.isAfter(since);
+    }
+    return false;
+  }
+
+  /**
+   * Whether If-None-Match header values list the entity tag, weakly compared.
+   */
+  static boolean listsTag(final List<String> ifNoneMatch, final String etag) {
+    for (String header : ifNoneMatch) {
+      for (String tag : header.split(",")) {
+        String value = tag.trim();
+        if (value.startsWith("W/")) {
+          value = value.substring(2);
+        }
+        if (etag.equals(unquote(value))) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Whether If-None-Match header values are {@code *}, which any stored representation matches.
+   */
+  static boolean listsWildcard(final List<String> ifNoneMatch) {
+    for (String header : ifNoneMatch) {
+      for (String tag : header.split(",")) {
+        if ("*".equals(tag.trim())) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  @Nullable
+  private static String condition(final Context context, final String attribute, final String header) {
+    String value = context.getAttributes().get(attribute, String.class);
+    return value != null ? value : header(context.getRequest(), header);
+  }
+
+  /**
+   * All values of a request header joined into one list, or {@code null} if the request has none.
+   */
+  @Nullable
+  private static String header(final Request request, final String name) {
+    List<String> values = request.getHeaders().getAll(name);
+    return values != null && !values.isEmpty() ? Joiner.on(", ").join(values) : null;
+  }
+
+  /**
+   * Parses an HTTP date, or returns {@code null} if it is not one; an invalid If-Modified-Since is ignored.
+   */
+  @Nullable
+  private static DateTime parseHttpDate(final String value) {
+    try {
+      return new DateTime(ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME)
+          .toInstant().toEpochMilli());
+    }
+    catch (DateTimeParseException e) {
+      return null;
+    }
+  }
+
+  private static String unquote(final String value) {
+    return value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")
+        ? value.substring(1, value.length() - 1)
+        : value;
+  }
+}
@@ -1,25 +1,58 @@
 package org.sonatype.nexus.plugins.vagrant.datastore.internal;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.locks.Lock;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Named;
 
+import org.sonatype.nexus.blobstore.api.Blob;
+import org.sonatype.nexus.blobstore.api.BlobRef;
+import org.sonatype.nexus.common.hash.HashAlgorithm;
+import org.sonatype.nexus.datastore.api.DuplicateKeyException;
+import org.sonatype.nexus.plugins.vagrant.datastore.VagrantBoxCatalog;
 import org.sonatype.nexus.plugins.vagrant.datastore.VagrantContentFacet;
+import org.sonatype.nexus.plugins.vagrant.datastore.VagrantStagedBox;
+import org.sonatype.nexus.plugins.vagrant.datastore.internal.store.VagrantAssetBlobStore;
+import org.sonatype.nexus.plugins.vagrant.datastore.internal.store.VagrantAssetStore;
+import org.sonatype.nexus.plugins.vagrant.datastore.internal.store.VagrantBoxAssetData;
+import org.sonatype.nexus.plugins.vagrant.datastore.internal.store.VagrantCatalogData;
+import org.sonatype.nexus.plugins.vagrant.datastore.internal.store.VagrantContentRepositoryStore;
+import org.sonatype.nexus.plugins.vagrant.internal.VagrantAssetPath;
 import org.sonatype.nexus.plugins.vagrant.internal.VagrantFormat;
+import org.sonatype.nexus.plugins.vagrant.internal.VagrantMetadataBuilder;
 import org.sonatype.nexus.repository.Facet;
+import org.sonatype.nexus.repository.InvalidContentException;
+import org.sonatype.nexus.repository.content.Asset;
+import org.sonatype.nexus.repository.content.Component;
 import org.sonatype.nexus.repository.content.facet.ContentFacetSupport;
 import org.sonatype.nexus.repository.content.fluent.FluentAsset;
+import org.sonatype.nexus.repository.content.fluent.FluentAssetBuilder;
 import org.sonatype.nexus.repository.content.fluent.FluentComponent;
 import org.sonatype.nexus.repository.content.store.FormatStoreManager;
 import org.sonatype.nexus.repository.view.Content;
 import org.sonatype.nexus.repository.view.Payload;
+import org.sonatype.nexus.repository.view.payloads.StreamPayload;
 import org.sonatype.nexus.repository.view.payloads.TempBlob;
+import org.sonatype.nexus.transaction.Transactional;
+
+import com.google.common.collect.Lists;
+import com.google.common.hash.HashCode;
+import org.joda.time.DateTime;
 
 import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toList;
 import static org.sonatype.nexus.common.hash.HashAlgorithm.SHA256;
 
 @Facet.Exposed
@@ -28,51 +61,446 @@ public class VagrantContentFacetImpl
     extends ContentFacetSupport
     implements VagrantContentFacet
 {
+  private static final int DELETE_BATCH_SIZE = 100;
+
+  private final VagrantVersionLocks versionLocks = new VagrantVersionLocks();
+
+  private final VagrantMetadataBuilder metadataBuilder;
+
   @Inject
   public VagrantContentFacetImpl(
-      @Named(VagrantFormat.NAME) final FormatStoreManager formatStoreManager)
+      @Named(VagrantFormat.NAME) final FormatStoreManager formatStoreManager,
+      final VagrantMetadataBuilder metadataBuilder)
   {
     super(formatStoreManager);
+    this.metadataBuilder = metadataBuilder;
   }
 
   @Override
   public Optional<Content> get(final String path) {
-    return assets().path(path).find().map(FluentAsset::download);
+    return assets().path(path).find()
+        .map(asset -> withValidators(asset.download(), asset));
+  }
+
+  @Override
+  public Optional<Content> head(final String path) {
+    return assets().path(path).find()
+        .flatMap(asset -> asset.blob().map(assetBlob -> {
+          Payload payload = new StreamPayload(() -> asset.download().openInputStream(),
+              assetBlob.blobSize(), assetBlob.contentType());
+          Content content = new Content(payload);
+          content.getAttributes().set(Asset.class, asset);
+          return withValidators(content, asset);
+        }));
+  }
+
+  /**
+   * Sets Last-Modified and an ETag derived from the SHA-256, so GET and HEAD of a box file agree.
+   */
+  private Content withValidators(final Content content, final FluentAsset asset) {
+    asset.blob().ifPresent(assetBlob -> content.getAttributes().set(Content.CONTENT_LAST_MODIFIED,
+        new DateTime(assetBlob.blobCreated().toInstant().toEpochMilli())));
+    String sha256 = metadataBuilder.checksum(asset);
+    if (sha256 != null) {
+      content.getAttributes().set(Content.CONTENT_ETAG, sha256);
+    }
+    return content;
   }
 
   @Override
   public FluentAsset put(final String path, final Payload payload,
                          final String org, final String name,
                          final String version, final String provider) throws IOException
+  {
+    return put(path, payload, null, org, name, version, provider);
+  }
+
+  /**
+   * The SHA-256 is the one the blob store computes while ingesting, so verifying it needs no second read;
+   * a mismatching temp blob is discarded when it is closed.
+   */
+  @Override
+  public FluentAsset put(final String path, final Payload payload, @Nullable final HashCode expectedSha256,
+                         final String org, final String name,
+                         final String version, final String provider) throws IOException
   {
     try (TempBlob tempBlob = blobs().ingest(payload, asList(SHA256))) {
-      FluentComponent component = components()
-          .name(name)
-          .namespace(org)
-          .version(version)
-          .getOrCreate();
+      HashCode sha256 = tempBlob.getHashes().get(SHA256);
+      if (expectedSha256 != null && !expectedSha256.equals(sha256)) {
+        throw new InvalidContentException(
+            "SHA-256 of " + path + " is " + sha256 + ", not the declared " + expectedSha256);
+      }
+      return save(path, tempBlob.getHashes(), tempBlob, org, name, version, provider);
+    }
+  }
+
+  /**
+   * The staged file is handed to the blob store with its precomputed hashes, which hard-links or moves it
+   * where possible; it is not read again for hashing. If the repository already holds the same content it is
+   * not ingested at all.
+   */
+  @Override
+  public FluentAsset put(final String path, final Path file, final Map<HashAlgorithm, HashCode> hashes,
+                         final String org, final String name,
+                         final String version, final String provider) throws IOException
+  {
+    FluentAsset deduplicated = save(path, hashes, null, org, name, version, provider);
+    if (deduplicated != null) {
+      return deduplicated;
+    }
+    try (TempBlob tempBlob = blobs().ingest(file, null, hashes, false)) {
+      return save(path, hashes, tempBlob, org, name, version, provider);
+    }
+  }
+
+  /**
+   * Box files whose content the repository already holds are not ingested at all; the others are ingested
+   * one after the other, which usually links or moves them. The rows of all box files and the catalog are
+   * then written in one transaction.
+   */
+  @Override
+  public List<FluentAsset> putVersion(final String org, final String name, final String version,
+                                      final List<VagrantStagedBox> boxes) throws IOException
+  {
+    List<TempBlob> tempBlobs = new ArrayList<>(Collections.nCopies(boxes.size(), (TempBlob) null));
+    try {
+      for (int attempt = 0; ; attempt++) {
+        List<FluentAsset> assets = saveVersion(org, name, version, boxes, tempBlobs);
+        if (assets != null) {
+          return assets;
+        }
+        // a blob found shared here may be gone by the next save; the round after that ingests everything left
+        for (int i = 0; i < boxes.size(); i++) {
+          VagrantStagedBox box = boxes.get(i);
+          if (tempBlobs.get(i) == null && (attempt > 0 || !findSharedBlob(box.hashes()).isPresent())) {
+            tempBlobs.set(i, blobs().ingest(box.file(), null, box.hashes(), false));
+          }
+        }
+      }
+    }
+    finally {
+      tempBlobs.stream().filter(Objects::nonNull).forEach(TempBlob::close);
+    }
+  }
+
+  /**
+   * Saves the box files of a version and their catalog together. Returns null, without writing anything, if a
+   * box file has neither a blob to share nor a temp blob.
+   */
+  @Nullable
+  private List<FluentAsset> saveVersion(final String org, final String name, final String version,
+                                        final List<VagrantStagedBox> boxes,
+                                        final List<TempBlob> tempBlobs)
+  {
+    Lock lock = versionLocks.lock(org, name, version);
+    List<BlobRef> storedBlobs = new ArrayList<>(boxes.size());
+    try {
+      List<Blob> sharedBlobs = new ArrayList<>(boxes.size());
+      for (int i = 0; i < boxes.size(); i++) {
+        Blob sharedBlob = findSharedBlob(boxes.get(i).hashes()).orElse(null);
+        if (sharedBlob == null && tempBlobs.get(i) == null) {
+          return null;
+        }
+        sharedBlobs.add(sharedBlob);
+      }
+
+      return Transactional.operation
+          .withStore(stores().assetStore)
+          .retryOn(DuplicateKeyException.class)
+          .call(() -> {
+            discardBlobs(storedBlobs);
+
+            FluentComponent component = components()
+                .name(name)
+                .namespace(org)
+                .version(version)
+                .getOrCreate();
+
+            List<FluentAsset> assets = new ArrayList<>(boxes.size());
+            for (int i = 0; i < boxes.size(); i++) {
+              VagrantStagedBox box = boxes.get(i);
+              assets.add(saveAsset(component, box.path(), box.provider(), box.hashes(),
+                  sharedBlobs.get(i), tempBlobs.get(i), storedBlobs));
+            }
+
+            catalogStore().lockCatalog(contentRepositoryId(), org, name);
+            rebuildCatalog(org, name);
+            return assets;
+          });
+    }
+    catch (RuntimeException e) {
+      discardBlobs(storedBlobs);
+      throw e;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Saves the asset and its catalog together. Returns null, without writing anything, if there is neither a
+   * blob to share nor a temp blob.
+   */
+  @Nullable
+  private FluentAsset save(final String path, final Map<HashAlgorithm, HashCode> hashes,
+                           @Nullable final TempBlob tempBlob,
+                           final String org, final String name,
+                           final String version, final String provider)
+  {
+    // asset and catalog change together. Uploads of one version are serialized by the version lock, so they
+    // do not race on creating the component; uploads of other versions of the box only wait for the catalog
+    // lock, taken last. A concurrent first catalog insert for the box, or a race with another node, is retried;
+    // the blob is looked up once, and a blob stored by an attempt that was rolled back is deleted again.
+    Lock lock = versionLocks.lock(org, name, version);
+    List<BlobRef> storedBlobs = new ArrayList<>(1);
+    try {
+      Optional<Blob> sharedBlob = findSharedBlob(hashes);
+      if (!sharedBlob.isPresent() && tempBlob == null) {
+        return null;
+      }
+
+      return Transactional.operation
+          .withStore(stores().assetStore)
+          .retryOn(DuplicateKeyException.class)
+          .call(() -> {
+            discardBlobs(storedBlobs);
 
-      return assets()
-          .path(path)
-          .kind(provider)
-          .component(component)
-          .blob(tempBlob)
-          .save();
+            FluentComponent component = components()
+                .name(name)
+                .namespace(org)
+                .version(version)
+                .getOrCreate();
+
+            FluentAsset asset = saveAsset(component, path, provider, hashes, sharedBlob.orElse(null), tempBlob,
+                storedBlobs);
+
+            catalogStore().lockCatalog(contentRepositoryId(), org, name);
+            rebuildCatalog(org, name);
+            return asset;
+          });
+    }
+    catch (RuntimeException e) {
+      discardBlobs(storedBlobs);
+      throw e;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns a blob of the repository with the same SHA-256 that an asset still references, if any.
+   */
+  private Optional<Blob> findSharedBlob(final Map<HashAlgorithm, HashCode> hashes) {
+    return assetBlobStore().findBlobBySha256(contentRepositoryId(), hashes.get(SHA256).toString())
+        .flatMap(blobRef -> blobs().blob(blobRef));
+  }
+
+  /**
+   * Saves one asset of the component; must run inside a transaction holding the catalog lock of its box.
+   * A shared blob is attached rather than storing the temp blob, which is then simply discarded when closed;
+   * otherwise the temp blob is stored, indexed by its SHA-256 and added to {@code storedBlobs}.
+   */
+  private FluentAsset saveAsset(final FluentComponent component, final String path, final String provider,
+                                final Map<HashAlgorithm, HashCode> hashes,
+                                @Nullable final Blob sharedBlob,
+                                @Nullable final TempBlob tempBlob,
+                                final List<BlobRef> storedBlobs)
+  {
+    String sha256 = hashes.get(SHA256).toString();
+
+    FluentAssetBuilder builder = assets()
+        .path(path)
+        .kind(provider)
+        .component(component);
+
+    if (sharedBlob != null) {
+      log.debug("Sharing blob with SHA-256 {} for {}", sha256, path);
+      return builder.save().attach(sharedBlob, hashes);
     }
+    FluentAsset asset = builder.blob(tempBlob).save();
+    asset.blob().ifPresent(assetBlob -> {
+      storedBlobs.add(assetBlob.blobRef());
+      assetBlobStore().indexBlob(contentRepositoryId(), sha256, assetBlob.blobRef());
+    });
+    return asset;
+  }
+
+  /**
+   * Deletes the blobs stored by a transaction that was rolled back, which no asset references.
+   */
+  private void discardBlobs(final List<BlobRef> storedBlobs) {
+    for (BlobRef blobRef : storedBlobs) {
+      log.debug("Deleting blob {} of a rolled back save", blobRef);
+      stores().blobStore.delete(blobRef.getBlobId(), "Rolled back Vagrant box save");
+    }
+    storedBlobs.clear();
   }
 
   @Override
   public boolean delete(final String path) {
-    return assets().path(path).find()
-        .map(asset -> {
-          asset.delete();
+    VagrantAssetPath boxPath = VagrantAssetPath.parse(path);
+    Lock lock = boxPath != null ? versionLocks.lock(boxPath.org(), boxPath.name(), boxPath.version()) : null;
+    try {
+      return Transactional.operation
+          .withStore(stores().assetStore)
+          .call(() -> assets().path(path).find()
+              .map(asset -> {
+                Optional<Component> component = asset.component();
+                component.ifPresent(c -> catalogStore().lockCatalog(contentRepositoryId(), c.namespace(), c.name()));
+                asset.delete();
+                component.ifPresent(c -> {
+                  deleteIfEmpty(c.namespace(), c.name(), c.version());
+                  rebuildCatalog(c.namespace(), c.name());
+                });
+                return true;
+              })
+              .orElse(false));
+    }
+    finally {
+      if (lock != null) {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * The box files to delete come from one indexed query; each batch then deletes box files of one version,
+   * the component if it emptied and rewrites the catalog in its own transaction, so a large box never holds
+   * one long transaction, and uploads only wait while their own version is being deleted.
+   */
+  @Override
+  public int deleteBox(final String org, final String name, @Nullable final String version) {
+    Map<String, List<VagrantBoxAssetData>> boxAssetsByVersion =
+        assetStore().browseBoxAssets(contentRepositoryId(), org, name).stream()
+            .filter(boxAsset -> version == null || version.equals(boxAsset.version()))
+            .collect(groupingBy(VagrantBoxAssetData::version, LinkedHashMap::new, toList()));
+
+    int deleted = 0;
+    for (Map.Entry<String, List<VagrantBoxAssetData>> versionAssets : boxAssetsByVersion.entrySet()) {
+      String deletedVersion = versionAssets.getKey();
+      for (List<VagrantBoxAssetData> batch : Lists.partition(versionAssets.getValue(), DELETE_BATCH_SIZE)) {
+        Lock lock = versionLocks.lock(org, name, deletedVersion);
+        try {
+          deleted += Transactional.operation
+              .withStore(stores().assetStore)
+              .call(() -> {
+                catalogStore().lockCatalog(contentRepositoryId(), org, name);
+
+                int count = 0;
+                for (VagrantBoxAssetData boxAsset : batch) {
+                  Optional<FluentAsset> asset = assets().path(boxAsset.path()).find();
+                  if (asset.isPresent() && asset.get().delete()) {
+                    count++;
+                  }
+                }
+                deleteIfEmpty(org, name, deletedVersion);
+
+                rebuildCatalog(org, name);
+                return count;
+              });
+        }
+        finally {
+          lock.unlock();
+        }
+      }
+    }
+    log.debug("Deleted {} box files of {}/{} {}", deleted, org, name, version != null ? version : "");
+    return deleted;
+  }
+
+  /**
+   * Deletes the component of a version once its last box file is gone; must run inside a transaction.
+   */
+  private void deleteIfEmpty(final String org, final String name, final String version) {
+    components()
+        .name(name)
+        .namespace(org)
+        .version(version)
+        .find()
+        .filter(component -> component.assets().isEmpty())
+        .ifPresent(FluentComponent::delete);
+  }
+
+  /**
+   * Single primary-key read of the materialized catalog. Boxes stored before the catalog table
+   * existed are materialized on first read.
+   */
+  @Override
+  public Optional<VagrantBoxCatalog> getCatalog(final String org, final String name) {
+    Optional<VagrantCatalogData> catalog = catalogStore().readCatalog(contentRepositoryId(), org, name);
+    if (!catalog.isPresent()) {
+      catalog = Transactional.operation
+          .withStore(stores().assetStore)
+          .retryOn(DuplicateKeyException.class)
+          .call(() -> {
+            catalogStore().lockCatalog(contentRepositoryId(), org, name);
+            return rebuildCatalog(org, name);
+          });
+    }
+    return catalog.map(VagrantBoxCatalog.class::cast);
+  }
+
+  /**
+   * Only rewrites the row if its change stamp no longer matches the stored box files, so the events of deletes
+   * this facet already accounted for do not write it again.
+   */
+  @Override
+  public boolean refreshCatalog(final String org, final String name) {
+    return Transactional.operation
+        .withStore(stores().assetStore)
+        .call(() -> {
+          Optional<String> stamp = catalogStore().lockCatalog(contentRepositoryId(), org, name);
+          if (!stamp.isPresent()) {
+            return false;
+          }
+          Collection<VagrantBoxAssetData> boxAssets = assetStore().browseBoxAssets(contentRepositoryId(), org, name);
+          if (stamp.get().equals(metadataBuilder.stamp(boxAssets))) {
+            return false;
+          }
+          rebuildCatalog(org, name, boxAssets);
           return true;
-        })
-        .orElse(false);
+        });
   }
 
   @Override
-  public Iterable<FluentAsset> getBoxAssets(final String org, final String name) {
-    return assets().browse(Integer.MAX_VALUE, null);
+  public void resetCatalogs() {
+    int deleted = catalogStore().deleteCatalogs(contentRepositoryId());
+    log.debug("Dropped {} materialized catalogs of {}", deleted, getRepository().getName());
+  }
+
+  /**
+   * Rewrites the catalog row of a box from its current assets, in version order; must run inside a transaction.
+   */
+  private Optional<VagrantCatalogData> rebuildCatalog(final String org, final String name) {
+    return rebuildCatalog(org, name, assetStore().browseBoxAssets(contentRepositoryId(), org, name));
+  }
+
+  private Optional<VagrantCatalogData> rebuildCatalog(final String org, final String name,
+                                                      final Collection<VagrantBoxAssetData> boxAssets)
+  {
+    int repositoryId = contentRepositoryId();
+    if (boxAssets.isEmpty()) {
+      catalogStore().deleteCatalog(repositoryId, org, name);
+      return Optional.empty();
+    }
+
+    List<VagrantBoxAssetData> sortedAssets = metadataBuilder.sortByVersion(boxAssets);
+    VagrantCatalogData catalog = VagrantCatalogData.of(repositoryId, org, name, sortedAssets,
+        metadataBuilder.stamp(boxAssets), metadataBuilder.renderedSize(org, name, sortedAssets));
+    catalogStore().saveCatalog(catalog);
+    return Optional.of(catalog);
+  }
+
+  private VagrantAssetStore assetStore() {
+    return (VagrantAssetStore) stores().assetStore;
+  }
+
+  private VagrantAssetBlobStore assetBlobStore() {
+    return (VagrantAssetBlobStore) stores().assetBlobStore;
+  }
+
+  private VagrantContentRepositoryStore catalogStore() {
+    return (VagrantContentRepositoryStore) stores().contentRepositoryStore;
   }
 }
@@ -1,29 +1,42 @@
 package org.sonatype.nexus.plugins.vagrant.datastore.internal;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
+import java.util.regex.Pattern;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
 import org.sonatype.goodies.common.ComponentSupport;
+import org.sonatype.nexus.plugins.vagrant.datastore.VagrantBoxAsset;
+import org.sonatype.nexus.plugins.vagrant.datastore.VagrantBoxCatalog;
 import org.sonatype.nexus.plugins.vagrant.datastore.VagrantContentFacet;
+import org.sonatype.nexus.plugins.vagrant.datastore.internal.VagrantMetadataCache.CatalogLoader;
+import org.sonatype.nexus.plugins.vagrant.internal.VagrantAssetPath;
 import org.sonatype.nexus.plugins.vagrant.internal.VagrantMetadataBuilder;
-import org.sonatype.nexus.plugins.vagrant.model.VagrantBoxMetadata;
-import org.sonatype.nexus.repository.content.fluent.FluentAsset;
 import org.sonatype.nexus.repository.http.HttpResponses;
+import org.sonatype.nexus.repository.http.HttpStatus;
 import org.sonatype.nexus.repository.view.Content;
 import org.sonatype.nexus.repository.view.Context;
 import org.sonatype.nexus.repository.view.Handler;
 import org.sonatype.nexus.repository.view.Payload;
+import org.sonatype.nexus.repository.view.Request;
 import org.sonatype.nexus.repository.view.Response;
+import org.sonatype.nexus.repository.view.Status;
 import org.sonatype.nexus.repository.view.matchers.token.TokenMatcher;
-import org.sonatype.nexus.repository.view.payloads.StringPayload;
 
 import java.util.Map;
 
+import com.google.common.hash.HashCode;
+import com.google.common.net.HttpHeaders;
+import org.joda.time.DateTime;
+
 import static org.sonatype.nexus.repository.http.HttpMethods.*;
 
 @Named
@@ -32,11 +45,29 @@ public class VagrantHostedHandler
     extends ComponentSupport
     implements Handler
 {
+  /**
+   * Request header with the SHA-256 a client expects the box file it uploads to have, in hex.
+   */
+  public static final String CHECKSUM_SHA256 = "X-Checksum-Sha256";
+
+  private static final Pattern SHA256_HEX = Pattern.compile("[0-9a-fA-F]{64}");
+
+  private static final int ESTIMATED_BYTES_PER_PROVIDER = 256;
+
+  private static final String GZIP = "gzip";
+
+  private static final int CATALOG_RETRY_AFTER_SECONDS = 5;
+
   private final VagrantMetadataBuilder metadataBuilder;
 
+  private final VagrantMetadataCache metadataCache;
+
   @Inject
-  public VagrantHostedHandler(final VagrantMetadataBuilder metadataBuilder) {
+  public VagrantHostedHandler(final VagrantMetadataBuilder metadataBuilder,
+                              final VagrantMetadataCache metadataCache)
+  {
     this.metadataBuilder = metadataBuilder;
+    this.metadataCache = metadataCache;
   }
 
   @Nonnull
@@ -57,7 +88,7 @@ public class VagrantHostedHandler
       case PUT:
         return handlePut(context, contentFacet, tokens, org, name);
       case DELETE:
-        return handleDelete(contentFacet, tokens);
+        return handleDelete(context, contentFacet, tokens, org, name);
       default:
         return HttpResponses.methodNotAllowed(method, GET, PUT, DELETE);
     }
@@ -69,21 +100,209 @@ public class VagrantHostedHandler
   {
     if (isBoxFileRequest(tokens)) {
       String path = buildAssetPath(tokens);
-      Optional<Content> content = contentFacet.get(path);
+      // HEAD is answered from the asset rows alone, without opening the blob
+      Optional<Content> content = HEAD.equals(context.getRequest().getAction())
+          ? contentFacet.head(path)
+          : contentFacet.get(path);
       return content.map(HttpResponses::ok).orElseGet(HttpResponses::notFound);
     }
 
-    // Metadata request — build dynamically
+    if (isLatestRequest(tokens)) {
+      return handleLatest(context, contentFacet, org, name, tokens.get("provider"));
+    }
+
+    // Metadata request — serve from cache, else answer from the catalog row's validators: 304 if the client
+    // holds the catalog, HEAD with its recorded size; else render the materialized catalog once for all
+    // waiting requests. 304s for cached catalogs are left to the conditional request handler. Misses are
+    // admitted within the repository's catalog build limit; past it they serve the previous catalog if
+    // allowed, else queue or get 503
+    String repositoryName = context.getRepository().getName();
     String baseUrl = context.getRepository().getUrl();
-    Iterable<FluentAsset> assets = contentFacet.getBoxAssets(org, name);
-    VagrantBoxMetadata metadata = metadataBuilder.buildMetadata(baseUrl, org, name, assets);
+    boolean gzip = acceptsGzip(context.getRequest());
+
+    VagrantCatalog catalog = metadataCache.get(repositoryName, org, name, baseUrl);
+    if (catalog != null) {
+      return catalogResponse(catalog.toContent(gzip), gzip);
+    }
+
+    VagrantAdmissionFacet admission = context.getRepository().facet(VagrantAdmissionFacet.class);
+    VagrantCatalog stale = admission.serveStaleCatalogs()
+        ? metadataCache.getStale(repositoryName, org, name, baseUrl)
+        : null;
+
+    // a request joining the build in flight renders nothing, so only the others need a build slot
+    VagrantAdmissionLimiter builds = null;
+    if (!metadataCache.isBuilding(repositoryName, org, name)) {
+      builds = admission.catalogBuilds();
+      if (!(stale != null ? builds.tryAcquire() : builds.acquire())) {
+        if (stale == null) {
+          return overloaded(repositoryName, org, name, builds);
+        }
+        builds = null;
+      }
+    }
 
-    if (metadata.getVersions().isEmpty()) {
+    if (stale != null && builds == null) {
+      return catalogResponse(stale.toContent(gzip), gzip);
+    }
+    try {
+      return buildResponse(context, contentFacet, repositoryName, baseUrl, org, name, gzip);
+    }
+    finally {
+      if (builds != null) {
+        builds.release();
+      }
+    }
+  }
+
+  private static Response catalogResponse(final Content content, final boolean gzip) {
+    Response.Builder response = new Response.Builder()
+        .status(Status.success(HttpStatus.OK))
+        .payload(content)
+        .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    if (gzip) {
+      response.header(HttpHeaders.CONTENT_ENCODING, GZIP);
+    }
+    return response.build();
+  }
+
+  /**
+   * Answers for the catalog of a box missing from the cache: 404 if the box has no box files, 304 if the
+   * client's conditions match the validators of the catalog row, else the catalog, rendered unless a HEAD
+   * can be answered from the recorded size.
+   */
+  private Response buildResponse(final Context context,
+                                 final VagrantContentFacet contentFacet,
+                                 final String repositoryName,
+                                 final String baseUrl,
+                                 final String org,
+                                 final String name,
+                                 final boolean gzip) throws IOException
+  {
+    Optional<VagrantBoxCatalog> boxCatalog = contentFacet.getCatalog(org, name);
+    if (!boxCatalog.isPresent()) {
+      metadataCache.remove(repositoryName, org, name);
       return HttpResponses.notFound();
     }
 
-    String json = metadataBuilder.toJson(metadata);
-    return HttpResponses.ok(new Content(new StringPayload(json, "application/json")));
+    String etag = metadataBuilder.etag(baseUrl, boxCatalog.get().stamp());
+    DateTime lastModified = lastModified(boxCatalog.get());
+    if (VagrantConditionsHandler.notModified(context, VagrantCatalog.etag(etag, gzip), lastModified)) {
+      return new Response.Builder()
+          .status(Status.success(HttpStatus.NOT_MODIFIED))
+          .header(HttpHeaders.ETAG, "\"" + VagrantCatalog.etag(etag, gzip) + "\"")
+          .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+          .build();
+    }
+
+    CatalogLoader loader = () -> renderCatalog(boxCatalog.get(), baseUrl, org, name, etag, lastModified);
+
+    if (HEAD.equals(context.getRequest().getAction()) && !gzip) {
+      long size = metadataBuilder.renderedSize(boxCatalog.get(), baseUrl);
+      if (size >= 0) {
+        // validators and size come from the catalog row; nothing is rendered unless the payload is read
+        return catalogResponse(VagrantCatalog.unrendered(
+            () -> load(repositoryName, org, name, baseUrl, loader).toContent(false).openInputStream(),
+            size, etag, lastModified), false);
+      }
+    }
+    return catalogResponse(load(repositoryName, org, name, baseUrl, loader).toContent(gzip), gzip);
+  }
+
+  private Response overloaded(final String repositoryName,
+                              final String org,
+                              final String name,
+                              final VagrantAdmissionLimiter builds)
+  {
+    log.debug("Refusing catalog of {}/{} in {}: {} builds in flight, {} queued",
+        org, name, repositoryName, builds.inFlight(), builds.queued());
+    return new Response.Builder()
+        .status(Status.failure(HttpStatus.SERVICE_UNAVAILABLE, "Too many concurrent catalog builds"))
+        .header(HttpHeaders.RETRY_AFTER, Integer.toString(CATALOG_RETRY_AFTER_SECONDS))
+        .build();
+  }
+
+  private VagrantCatalog load(final String repositoryName,
+                              final String org,
+                              final String name,
+                              final String baseUrl,
+                              final CatalogLoader loader) throws IOException
+  {
+    VagrantCatalog catalog = metadataCache.load(repositoryName, org, name, baseUrl, loader);
+    if (catalog == null) {
+      throw new IOException("Catalog of " + org + "/" + name + " could not be rendered");
+    }
+    return catalog;
+  }
+
+  private VagrantCatalog renderCatalog(final VagrantBoxCatalog boxCatalog,
+                                       final String baseUrl,
+                                       final String org,
+                                       final String name,
+                                       final String etag,
+                                       final DateTime lastModified) throws IOException
+  {
+    List<VagrantBoxAsset> boxAssets = boxCatalog.assets();
+    ByteArrayOutputStream json = new ByteArrayOutputStream(boxAssets.size() * ESTIMATED_BYTES_PER_PROVIDER);
+    metadataBuilder.writeJson(baseUrl, org, name, boxAssets, json);
+    return new VagrantCatalog(baseUrl, json.toByteArray(), etag, lastModified);
+  }
+
+  private static DateTime lastModified(final VagrantBoxCatalog boxCatalog) {
+    return new DateTime(boxCatalog.lastUpdated().toInstant().toEpochMilli()).withMillisOfSecond(0);
+  }
+
+  /**
+   * Whether the client lists gzip in Accept-Encoding with a non-zero quality.
+   */
+  private boolean acceptsGzip(final Request request) {
+    for (String header : request.getHeaders().getAll(HttpHeaders.ACCEPT_ENCODING)) {
+      for (String coding : header.split(",")) {
+        String[] parts = coding.trim().split(";");
+        if (GZIP.equalsIgnoreCase(parts[0].trim()) && !hasZeroQuality(parts)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private boolean hasZeroQuality(final String[] codingParts) {
+    for (int i = 1; i < codingParts.length; i++) {
+      String param = codingParts[i].trim();
+      if (param.startsWith("q=")) {
+        try {
+          return Double.parseDouble(param.substring(2)) == 0;
+        }
+        catch (NumberFormatException e) {
+          return false;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Redirects to the box file of the newest version that has the requested provider. Catalog entries
+   * are stored in version order, so the scan from the end usually stops at the first entry.
+   */
+  private Response handleLatest(final Context context, final VagrantContentFacet contentFacet,
+                                final String org, final String name, final String provider)
+  {
+    Optional<VagrantBoxCatalog> boxCatalog = contentFacet.getCatalog(org, name);
+    if (boxCatalog.isPresent()) {
+      List<VagrantBoxAsset> boxAssets = boxCatalog.get().assets();
+      for (int i = boxAssets.size() - 1; i >= 0; i--) {
+        VagrantBoxAsset boxAsset = boxAssets.get(i);
+        if (provider.equals(boxAsset.provider())) {
+          return new Response.Builder()
+              .status(Status.success(HttpStatus.FOUND))
+              .header(HttpHeaders.LOCATION, context.getRepository().getUrl() + boxAsset.path())
+              .build();
+        }
+      }
+    }
+    return HttpResponses.notFound();
   }
 
   private Response handlePut(final Context context, final VagrantContentFacet contentFacet,
@@ -98,16 +317,46 @@ public class VagrantHostedHandler
     if (payload == null) {
       return HttpResponses.badRequest("Request body is required");
     }
+    String declaredSha256 = context.getRequest().getHeaders().get(CHECKSUM_SHA256);
+    HashCode expectedSha256 = declaredSha256 != null ? parseSha256(declaredSha256) : null;
+    if (declaredSha256 != null && expectedSha256 == null) {
+      return HttpResponses.badRequest(CHECKSUM_SHA256 + " must be 64 hex digits");
+    }
 
-    contentFacet.put(path, payload, org, name, version, provider);
+    try {
+      contentFacet.put(path, payload, expectedSha256, org, name, version, provider);
+    }
+    finally {
+      metadataCache.invalidate(context.getRepository().getName(), org, name);
+    }
     return HttpResponses.created();
   }
 
-  private Response handleDelete(final VagrantContentFacet contentFacet,
-                                final Map<String, String> tokens)
+  /**
+   * Parses a SHA-256 in hex, or returns null if it is not one.
+   */
+  @Nullable
+  static HashCode parseSha256(final String hex) {
+    return SHA256_HEX.matcher(hex).matches() ? HashCode.fromString(hex.toLowerCase(Locale.ENGLISH)) : null;
+  }
+
+  private Response handleDelete(final Context context, final VagrantContentFacet contentFacet,
+                                final Map<String, String> tokens, final String org, final String name)
   {
+    if (!isBoxFileRequest(tokens)) {
+      // a whole version, or the whole box
+      int deletedCount = contentFacet.deleteBox(org, name, tokens.get("version"));
+      if (deletedCount > 0) {
+        metadataCache.invalidate(context.getRepository().getName(), org, name);
+      }
+      return deletedCount > 0 ? HttpResponses.noContent() : HttpResponses.notFound();
+    }
+
     String path = buildAssetPath(tokens);
     boolean deleted = contentFacet.delete(path);
+    if (deleted) {
+      metadataCache.invalidate(context.getRepository().getName(), org, name);
+    }
     return deleted ? HttpResponses.noContent() : HttpResponses.notFound();
   }
 
@@ -115,12 +364,11 @@ public class VagrantHostedHandler
     return tokens.containsKey("version") && tokens.containsKey("provider") && tokens.containsKey("filename");
   }
 
+  private boolean isLatestRequest(final Map<String, String> tokens) {
+    return tokens.containsKey("provider") && !tokens.containsKey("version");
+  }
+
   private String buildAssetPath(final Map<String, String> tokens) {
-    return String.format("/%s/%s/%s/%s/%s.box",
-        tokens.get("org"),
-        tokens.get("name"),
-        tokens.get("version"),
-        tokens.get("provider"),
-        tokens.get("filename"));
+    return VagrantAssetPath.format(tokens);
   }
 }
@@ -60,6 +60,9 @@ public class VagrantHostedRecipe
   @Inject
   Provider<ContentMaintenanceFacet> maintenanceFacet;
 
+  @Inject
+  Provider<VagrantAdmissionFacet> admissionFacet;
+
   @Inject
   TimingHandler timingHandler;
 
@@ -87,6 +90,18 @@ public class VagrantHostedRecipe
   @Inject
   VagrantHostedHandler hostedHandler;
 
+  @Inject
+  VagrantUploadHandler uploadHandler;
+
+  @Inject
+  VagrantUploadAdmissionHandler uploadAdmissionHandler;
+
+  @Inject
+  VagrantUnchangedBoxHandler unchangedBoxHandler;
+
+  @Inject
+  VagrantConditionsHandler conditionsHandler;
+
   @Inject
   public VagrantHostedRecipe(
       @Named(HostedType.NAME) final Type type,
@@ -103,6 +118,7 @@ public class VagrantHostedRecipe
     repository.attach(maintenanceFacet.get());
     repository.attach(searchFacet.get());
     repository.attach(browseFacet.get());
+    repository.attach(admissionFacet.get());
   }
 
   private ViewFacet configure(final ConfigurableViewFacet facet) {
@@ -115,13 +131,25 @@ public class VagrantHostedRecipe
         .handler(securityHandler)
         .handler(exceptionHandler)
         .handler(handlerContributor)
+        .handler(conditionsHandler)
         .handler(conditionalRequestHandler)
         .handler(contentHeadersHandler)
         .handler(lastDownloadedHandler)
         .handler(hostedHandler)
         .create());
 
-    // GET /{org}/{name}/{version}/{provider}/{filename}.box — download
+    // GET /{org}/{name}/latest/{provider} — redirect to the newest box file for a provider
+    builder.route(new Route.Builder()
+        .matcher(LogicMatchers.and(new ActionMatcher(GET, HEAD),
+            new TokenMatcher("/{org}/{name}/latest/{provider}")))
+        .handler(timingHandler)
+        .handler(securityHandler)
+        .handler(exceptionHandler)
+        .handler(handlerContributor)
+        .handler(hostedHandler)
+        .create());
+
+    // GET /{org}/{name}/{version}/{provider}/{filename}.box — download, or progress of a resumable upload
     builder.route(new Route.Builder()
         .matcher(LogicMatchers.and(new ActionMatcher(GET, HEAD),
             new TokenMatcher("/{org}/{name}/{version}/{provider}/{filename}.box")))
@@ -129,6 +157,7 @@ public class VagrantHostedRecipe
         .handler(securityHandler)
         .handler(exceptionHandler)
         .handler(handlerContributor)
+        .handler(uploadHandler)
         .handler(conditionalRequestHandler)
         .handler(partialFetchHandler)
         .handler(contentHeadersHandler)
@@ -136,7 +165,7 @@ public class VagrantHostedRecipe
         .handler(hostedHandler)
         .create());
 
-    // PUT /{org}/{name}/{version}/{provider}/{filename}.box — upload
+    // PUT /{org}/{name}/{version}/{provider}/{filename}.box — upload, or a chunk of a resumable upload
     builder.route(new Route.Builder()
         .matcher(LogicMatchers.and(new ActionMatcher(PUT),
             new TokenMatcher("/{org}/{name}/{version}/{provider}/{filename}.box")))
@@ -144,10 +173,36 @@ public class VagrantHostedRecipe
         .handler(securityHandler)
         .handler(exceptionHandler)
         .handler(handlerContributor)
+        .handler(unchangedBoxHandler)
+        .handler(uploadAdmissionHandler)
+        .handler(uploadHandler)
         .handler(hostedHandler)
         .create());
 
-    // DELETE /{org}/{name}/{version}/{provider}/{filename}.box — delete
+    // POST /{org}/{name}/{version}/{provider}/{filename}.box — start or commit a resumable upload
+    builder.route(new Route.Builder()
+        .matcher(LogicMatchers.and(new ActionMatcher(POST),
+            new TokenMatcher("/{org}/{name}/{version}/{provider}/{filename}.box")))
+        .handler(timingHandler)
+        .handler(securityHandler)
+        .handler(exceptionHandler)
+        .handler(handlerContributor)
+        .handler(uploadAdmissionHandler)
+        .handler(uploadHandler)
+        .create());
+
+    // POST /{org}/{name}/{version} — commit resumable uploads of several providers of a version together
+    builder.route(new Route.Builder()
+        .matcher(LogicMatchers.and(new ActionMatcher(POST), new TokenMatcher("/{org}/{name}/{version}")))
+        .handler(timingHandler)
+        .handler(securityHandler)
+        .handler(exceptionHandler)
+        .handler(handlerContributor)
+        .handler(uploadAdmissionHandler)
+        .handler(uploadHandler)
+        .create());
+
+    // DELETE /{org}/{name}/{version}/{provider}/{filename}.box — delete, or abort a resumable upload
     builder.route(new Route.Builder()
         .matcher(LogicMatchers.and(new ActionMatcher(DELETE),
             new TokenMatcher("/{org}/{name}/{version}/{provider}/{filename}.box")))
@@ -155,6 +210,19 @@ public class VagrantHostedRecipe
         .handler(securityHandler)
         .handler(exceptionHandler)
         .handler(handlerContributor)
+        .handler(uploadHandler)
+        .handler(hostedHandler)
+        .create());
+
+    // DELETE /{org}/{name}/{version} and /{org}/{name} — delete all box files of a version or of the box
+    builder.route(new Route.Builder()
+        .matcher(LogicMatchers.and(new ActionMatcher(DELETE), LogicMatchers.or(
+            new TokenMatcher("/{org}/{name}/{version}"),
+            new TokenMatcher("/{org}/{name}"))))
+        .handler(timingHandler)
+        .handler(securityHandler)
+        .handler(exceptionHandler)
+        .handler(handlerContributor)
         .handler(hostedHandler)
         .create());
 
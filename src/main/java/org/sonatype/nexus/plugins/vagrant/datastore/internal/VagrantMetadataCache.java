@@ -0,0 +1,369 @@
+package org.sonatype.nexus.plugins.vagrant.datastore.internal;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.sonatype.goodies.common.ComponentSupport;
+import org.sonatype.nexus.common.event.EventAware;
+import org.sonatype.nexus.plugins.vagrant.internal.VagrantAssetPath;
+import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.content.event.asset.AssetCreatedEvent;
+import org.sonatype.nexus.repository.content.event.asset.AssetUploadedEvent;
+import org.sonatype.nexus.repository.manager.RepositoryDeletedEvent;
+
+import com.google.common.base.Ticker;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.Subscribe;
+
+/**
+ * Bounded in-memory cache of serialized box catalogs (plain and gzip), keyed by repository and box.
+ *
+ * Entries are weighed by their serialized size and evicted least-recently-used once the configured
+ * byte budget is reached. Writes through {@link VagrantHostedHandler} invalidate the affected box;
+ * creates and uploads made elsewhere, and repository removal, are picked up from events, deletes made
+ * elsewhere from {@link VagrantCatalogMaintainer} once it has rewritten the catalog row.
+ * Events only reach the node that made the change, so entries are also only served as fresh for
+ * {@code nexus.vagrant.metadata.cache.expireAfterWriteSeconds} after they were built; that bounds how long
+ * another node of a cluster keeps serving a catalog that predates a write.
+ *
+ * Misses go through {@link #load}, which runs one build per box at a time: concurrent requests for the
+ * same box wait for the build in flight and share its result instead of each rendering the catalog.
+ *
+ * Invalidating a box keeps its last catalog as a stale entry, within the same byte budget, so a handler
+ * under load can serve it from {@link #getStale} while the box is rebuilt. Expired entries are kept the
+ * same way. Stale entries go once replaced, once the box is found gone, or with their repository.
+ */
+@Named
+@Singleton
+public class VagrantMetadataCache
+    extends ComponentSupport
+    implements EventAware
+{
+  private final Cache<CatalogKey, Entry> cache;
+
+  private final ConcurrentMap<CatalogKey, Flight> inFlight = new ConcurrentHashMap<>();
+
+  private static final int GENERATION_STRIPES = 1024;
+
+  /**
+   * Bumped when a box is invalidated so a build of that box that raced with the write is not cached.
+   * Striped by box: a write only discards builds of boxes sharing its stripe, not every build in flight.
+   */
+  private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+  private final long expireAfterWriteNanos;
+
+  private final Ticker ticker;
+
+  @Inject
+  public VagrantMetadataCache(
+      @Named("${nexus.vagrant.metadata.cache.maxBytes:-67108864}") final long maxBytes,
+      @Named("${nexus.vagrant.metadata.cache.expireAfterWriteSeconds:-60}") final long expireAfterWriteSeconds)
+  {
+    this(maxBytes, TimeUnit.SECONDS.toNanos(expireAfterWriteSeconds), Ticker.systemTicker());
+  }
+
+  VagrantMetadataCache(final long maxBytes, final long expireAfterWriteNanos, final Ticker ticker) {
+    this.expireAfterWriteNanos = expireAfterWriteNanos;
+    this.ticker = ticker;
+    // single segment: the byte budget is not split across segments, so large catalogs stay cacheable
+    this.cache = CacheBuilder.newBuilder()
+        .concurrencyLevel(1)
+        .maximumWeight(maxBytes)
+        .weigher((CatalogKey key, Entry value) -> value.catalog.size())
+        .build();
+  }
+
+  /**
+   * Current generation of a box; pass it back to {@link #put} so builds raced by a write are dropped.
+   */
+  public long generation(final String repositoryName, final String org, final String name) {
+    return generations.get(stripe(new CatalogKey(repositoryName, org, name)));
+  }
+
+  /**
+   * Returns the cached catalog, or {@code null} if absent or rendered against a different base URL.
+   */
+  @Nullable
+  public VagrantCatalog get(final String repositoryName, final String org, final String name, final String baseUrl) {
+    Entry cached = cache.getIfPresent(new CatalogKey(repositoryName, org, name));
+    if (cached == null || !isFresh(cached) || !cached.catalog.getBaseUrl().equals(baseUrl)) {
+      return null;
+    }
+    return cached.catalog;
+  }
+
+  /**
+   * Returns the cached catalog even if the box was invalidated or the entry expired since it was rendered,
+   * or {@code null} if absent or rendered against a different base URL.
+   */
+  @Nullable
+  public VagrantCatalog getStale(final String repositoryName,
+                                 final String org,
+                                 final String name,
+                                 final String baseUrl)
+  {
+    Entry cached = cache.getIfPresent(new CatalogKey(repositoryName, org, name));
+    if (cached == null || !cached.catalog.getBaseUrl().equals(baseUrl)) {
+      return null;
+    }
+    return cached.catalog;
+  }
+
+  /**
+   * Whether a build of the box is in flight, which a {@link #load} would wait for rather than render.
+   */
+  public boolean isBuilding(final String repositoryName, final String org, final String name) {
+    return inFlight.containsKey(new CatalogKey(repositoryName, org, name));
+  }
+
+  /**
+   * Returns the cached catalog, else the result of the build already in flight for the box, else runs
+   * {@code loader} and caches its result. Returns {@code null} if the loader finds no catalog.
+   */
+  @Nullable
+  public VagrantCatalog load(final String repositoryName,
+                             final String org,
+                             final String name,
+                             final String baseUrl,
+                             final CatalogLoader loader) throws IOException
+  {
+    VagrantCatalog cached = get(repositoryName, org, name, baseUrl);
+    if (cached != null) {
+      return cached;
+    }
+
+    CatalogKey key = new CatalogKey(repositoryName, org, name);
+    Flight flight = new Flight(baseUrl);
+    Flight existing = inFlight.putIfAbsent(key, flight);
+    if (existing != null) {
+      if (existing.baseUrl.equals(baseUrl)) {
+        return existing.await();
+      }
+      // rendered for another base URL, build on our own without coalescing
+      flight = null;
+    }
+
+    long buildGeneration = generations.get(stripe(key));
+    try {
+      VagrantCatalog catalog = loader.load();
+      if (catalog != null) {
+        put(repositoryName, org, name, catalog, buildGeneration);
+      }
+      else {
+        cache.invalidate(key);
+      }
+      if (flight != null) {
+        flight.result.complete(catalog);
+      }
+      return catalog;
+    }
+    catch (IOException | RuntimeException | Error e) {
+      if (flight != null) {
+        flight.result.completeExceptionally(e);
+      }
+      throw e;
+    }
+    finally {
+      if (flight != null) {
+        inFlight.remove(key, flight);
+      }
+    }
+  }
+
+  public void put(final String repositoryName,
+                  final String org,
+                  final String name,
+                  final VagrantCatalog catalog,
+                  final long buildGeneration)
+  {
+    CatalogKey key = new CatalogKey(repositoryName, org, name);
+    if (buildGeneration != generations.get(stripe(key))) {
+      log.debug("Not caching catalog {}/{} in {}, invalidated during build", org, name, repositoryName);
+      return;
+    }
+    cache.put(key, new Entry(catalog, false, ticker.read()));
+  }
+
+  /**
+   * Marks the cached catalog of a box stale. A build already in flight is detached, so requests arriving
+   * after the write start a fresh build instead of waiting for a stale one.
+   */
+  public void invalidate(final String repositoryName, final String org, final String name) {
+    CatalogKey key = new CatalogKey(repositoryName, org, name);
+    generations.incrementAndGet(stripe(key));
+    inFlight.remove(key);
+    cache.asMap().computeIfPresent(key, (k, cached) -> cached.stale ? cached : cached.markStale());
+  }
+
+  /**
+   * Drops the cached catalog of a box, stale or not; for boxes that no longer exist.
+   */
+  public void remove(final String repositoryName, final String org, final String name) {
+    cache.invalidate(new CatalogKey(repositoryName, org, name));
+  }
+
+  /**
+   * Marks every cached catalog of a repository stale, as {@link #invalidate} does for one box.
+   */
+  public void invalidateRepository(final String repositoryName) {
+    detachBuilds(repositoryName);
+    cache.asMap().replaceAll((key, cached) ->
+        key.repositoryName.equals(repositoryName) && !cached.stale ? cached.markStale() : cached);
+  }
+
+  /**
+   * Drops every cached catalog of a repository, stale or not.
+   */
+  public void removeRepository(final String repositoryName) {
+    detachBuilds(repositoryName);
+    cache.asMap().keySet().removeIf(key -> key.repositoryName.equals(repositoryName));
+  }
+
+  @Subscribe
+  @AllowConcurrentEvents
+  public void on(final AssetCreatedEvent event) {
+    event.getRepository().ifPresent(repository -> invalidatePath(repository, event.getAsset().path()));
+  }
+
+  @Subscribe
+  @AllowConcurrentEvents
+  public void on(final AssetUploadedEvent event) {
+    event.getRepository().ifPresent(repository -> invalidatePath(repository, event.getAsset().path()));
+  }
+
+  @Subscribe
+  @AllowConcurrentEvents
+  public void on(final RepositoryDeletedEvent event) {
+    removeRepository(event.getRepository().getName());
+  }
+
+  private void detachBuilds(final String repositoryName) {
+    for (int i = 0; i < GENERATION_STRIPES; i++) {
+      generations.incrementAndGet(i);
+    }
+    inFlight.keySet().removeIf(key -> key.repositoryName.equals(repositoryName));
+  }
+
+  private boolean isFresh(final Entry entry) {
+    return !entry.stale && ticker.read() - entry.writtenAt < expireAfterWriteNanos;
+  }
+
+  private static int stripe(final CatalogKey key) {
+    return Math.floorMod(key.hashCode(), GENERATION_STRIPES);
+  }
+
+  private void invalidatePath(final Repository repository, final String path) {
+    VagrantAssetPath assetPath = VagrantAssetPath.parse(path);
+    if (assetPath != null) {
+      invalidate(repository.getName(), assetPath.org(), assetPath.name());
+    }
+  }
+
+  /**
+   * Builds the catalog of a box on a cache miss.
+   */
+  @FunctionalInterface
+  public interface CatalogLoader
+  {
+    /**
+     * @return the rendered catalog, or {@code null} if the box has no box files
+     */
+    @Nullable
+    VagrantCatalog load() throws IOException;
+  }
+
+  private static final class Entry
+  {
+    private final VagrantCatalog catalog;
+
+    private final boolean stale;
+
+    private final long writtenAt;
+
+    private Entry(final VagrantCatalog catalog, final boolean stale, final long writtenAt) {
+      this.catalog = catalog;
+      this.stale = stale;
+      this.writtenAt = writtenAt;
+    }
+
+    private Entry markStale() {
+      return new Entry(catalog, true, writtenAt);
+    }
+  }
+
+  /**
+   * Build in progress for one box, awaited by requests that arrive while it runs.
+   */
+  private static final class Flight
+  {
+    private final String baseUrl;
+
+    private final CompletableFuture<VagrantCatalog> result = new CompletableFuture<>();
+
+    private Flight(final String baseUrl) {
+      this.baseUrl = baseUrl;
+    }
+
+    @Nullable
+    private VagrantCatalog await() throws IOException {
+      try {
+        return result.join();
+      }
+      catch (CompletionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+          throw new IOException(cause.getMessage(), cause);
+        }
+        Throwables.throwIfUnchecked(cause);
+        throw e;
+      }
+    }
+  }
+
+  private static final class CatalogKey
+  {
+    private final String repositoryName;
+
+    private final String org;
+
+    private final String name;
+
+    private CatalogKey(final String repositoryName, final String org, final String name) {
+      this.repositoryName = repositoryName;
+      this.org = org;
+      this.name = name;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof CatalogKey)) {
+        return false;
+      }
+      CatalogKey that = (CatalogKey) o;
+      return repositoryName.equals(that.repositoryName) && org.equals(that.org) && name.equals(that.name);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(repositoryName, org, name);
+    }
+  }
+}
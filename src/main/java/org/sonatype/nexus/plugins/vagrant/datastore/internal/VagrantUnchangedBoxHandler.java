@@ -0,0 +1,102 @@
+package org.sonatype.nexus.plugins.vagrant.datastore.internal;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.sonatype.goodies.common.ComponentSupport;
+import org.sonatype.nexus.plugins.vagrant.datastore.VagrantContentFacet;
+import org.sonatype.nexus.plugins.vagrant.internal.VagrantAssetPath;
+import org.sonatype.nexus.repository.http.HttpStatus;
+import org.sonatype.nexus.repository.view.Content;
+import org.sonatype.nexus.repository.view.Context;
+import org.sonatype.nexus.repository.view.Handler;
+import org.sonatype.nexus.repository.view.Request;
+import org.sonatype.nexus.repository.view.Response;
+import org.sonatype.nexus.repository.view.Status;
+import org.sonatype.nexus.repository.view.matchers.token.TokenMatcher;
+
+import com.google.common.hash.HashCode;
+import com.google.common.net.HttpHeaders;
+
+/**
+ * Answers a PUT of a box file that is already stored at the path without reading the body: 304 if
+ * If-None-Match lists the stored SHA-256, the ETag of box files; 200 if the declared SHA-256 is the stored
+ * one. If-None-Match {@code *} only allows creating the box, so it fails with 412 whatever the body. Other
+ * PUTs, and chunks of resumable uploads, proceed. Only the asset and asset blob rows are read.
+ *
+ * Runs ahead of {@link VagrantUploadAdmissionHandler}, so a re-publish that is skipped never takes or waits
+ * for an upload slot.
+ */
+@Named
+@Singleton
+public class VagrantUnchangedBoxHandler
+    extends ComponentSupport
+    implements Handler
+{
+  @Nonnull
+  @Override
+  public Response handle(@Nonnull final Context context) throws Exception {
+    Request request = context.getRequest();
+    if (request.getPayload() == null || request.getParameters().get(VagrantUploadHandler.UPLOAD_ID) != null) {
+      return context.proceed();
+    }
+
+    String declaredSha256 = request.getHeaders().get(VagrantHostedHandler.CHECKSUM_SHA256);
+    HashCode expectedSha256 = declaredSha256 != null ? VagrantHostedHandler.parseSha256(declaredSha256) : null;
+    List<String> ifNoneMatch = request.getHeaders().getAll(HttpHeaders.IF_NONE_MATCH);
+    if (ifNoneMatch == null) {
+      ifNoneMatch = Collections.emptyList();
+    }
+    if (ifNoneMatch.isEmpty() && expectedSha256 == null) {
+      // a malformed checksum is refused further down
+      return context.proceed();
+    }
+
+    Map<String, String> tokens = context.getAttributes().require(TokenMatcher.State.class).getTokens();
+    String path = VagrantAssetPath.format(tokens);
+    String storedSha256 = context.getRepository().facet(VagrantContentFacet.class).head(path)
+        .map(content -> content.getAttributes().get(Content.CONTENT_ETAG, String.class))
+        .orElse(null);
+    Response unchanged = storedSha256 != null
+        ? unchanged(path, storedSha256, ifNoneMatch, expectedSha256)
+        : null;
+    return unchanged != null ? unchanged : context.proceed();
+  }
+
+  @Nullable
+  private Response unchanged(final String path,
+                             final String storedSha256,
+                             final List<String> ifNoneMatch,
+                             @Nullable final HashCode expectedSha256)
+  {
+    if (VagrantConditionsHandler.listsWildcard(ifNoneMatch)) {
+      log.debug("Refusing upload of {}, already stored and If-None-Match is *", path);
+      return new Response.Builder()
+          .status(Status.failure(HttpStatus.PRECONDITION_FAILED, "Box file " + path + " already exists"))
+          .header(HttpHeaders.ETAG, "\"" + storedSha256 + "\"")
+          .build();
+    }
+
+    int status;
+    if (VagrantConditionsHandler.listsTag(ifNoneMatch, storedSha256)) {
+      status = HttpStatus.NOT_MODIFIED;
+    }
+    else if (expectedSha256 != null && expectedSha256.toString().equals(storedSha256)) {
+      status = HttpStatus.OK;
+    }
+    else {
+      return null;
+    }
+    log.debug("Skipping upload of {}, already stored with SHA-256 {}", path, storedSha256);
+    return new Response.Builder()
+        .status(Status.success(status))
+        .header(HttpHeaders.ETAG, "\"" + storedSha256 + "\"")
+        .build();
+  }
+}
@@ -0,0 +1,56 @@
+package org.sonatype.nexus.plugins.vagrant.datastore.internal;
+
+import javax.annotation.Nonnull;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.sonatype.goodies.common.ComponentSupport;
+import org.sonatype.nexus.repository.http.HttpStatus;
+import org.sonatype.nexus.repository.view.Context;
+import org.sonatype.nexus.repository.view.Handler;
+import org.sonatype.nexus.repository.view.Response;
+import org.sonatype.nexus.repository.view.Status;
+
+import com.google.common.net.HttpHeaders;
+
+/**
+ * Admits box file uploads, and the commits of resumable uploads that hand their files to the blob store, within
+ * the limits of the repository's {@link VagrantAdmissionFacet}, so a burst of large uploads queues instead of
+ * saturating the blob store. Uploads that find the queue full, or wait in it
+ * longer than its timeout, are refused with 503 and Retry-After; the refusal carries the uploads in flight and
+ * queued at the time.
+ */
+@Named
+@Singleton
+public class VagrantUploadAdmissionHandler
+    extends ComponentSupport
+    implements Handler
+{
+  public static final String UPLOADS_IN_FLIGHT = "X-Uploads-In-Flight";
+
+  public static final String UPLOADS_QUEUED = "X-Uploads-Queued";
+
+  static final int RETRY_AFTER_SECONDS = 30;
+
+  @Nonnull
+  @Override
+  public Response handle(@Nonnull final Context context) throws Exception {
+    VagrantAdmissionLimiter uploads = context.getRepository().facet(VagrantAdmissionFacet.class).uploads();
+    if (!uploads.acquire()) {
+      log.debug("Refusing upload to {}: {} in flight, {} queued",
+          context.getRepository().getName(), uploads.inFlight(), uploads.queued());
+      return new Response.Builder()
+          .status(Status.failure(HttpStatus.SERVICE_UNAVAILABLE, "Too many concurrent uploads"))
+          .header(HttpHeaders.RETRY_AFTER, Integer.toString(RETRY_AFTER_SECONDS))
+          .header(UPLOADS_IN_FLIGHT, Integer.toString(uploads.inFlight()))
+          .header(UPLOADS_QUEUED, Integer.toString(uploads.queued()))
+          .build();
+    }
+    try {
+      return context.proceed();
+    }
+    finally {
+      uploads.release();
+    }
+  }
+}
@@ -0,0 +1,379 @@
+package org.sonatype.nexus.plugins.vagrant.datastore.internal;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.sonatype.goodies.common.ComponentSupport;
+import org.sonatype.nexus.common.hash.HashAlgorithm;
+import org.sonatype.nexus.plugins.vagrant.datastore.VagrantContentFacet;
+import org.sonatype.nexus.plugins.vagrant.datastore.VagrantStagedBox;
+import org.sonatype.nexus.plugins.vagrant.internal.VagrantAssetPath;
+import org.sonatype.nexus.repository.http.HttpResponses;
+import org.sonatype.nexus.repository.http.HttpStatus;
+import org.sonatype.nexus.repository.security.SecurityFacet;
+import org.sonatype.nexus.repository.view.Context;
+import org.sonatype.nexus.repository.view.Handler;
+import org.sonatype.nexus.repository.view.Payload;
+import org.sonatype.nexus.repository.view.Request;
+import org.sonatype.nexus.repository.view.Response;
+import org.sonatype.nexus.repository.view.Status;
+import org.sonatype.nexus.repository.view.matchers.token.TokenMatcher;
+import org.sonatype.nexus.security.UserIdHelper;
+
+import com.google.common.hash.HashCode;
+import com.google.common.net.HttpHeaders;
+
+import static org.sonatype.nexus.common.hash.HashAlgorithm.SHA256;
+import static org.sonatype.nexus.repository.http.HttpMethods.*;
+
+/**
+ * Resumable uploads of box files, for boxes too large to send in one request.
+ *
+ * <pre>
+ * POST   {box path}                 start; 201 with Location {box path}?uploadId={id}
+ * PUT    {box path}?uploadId={id}   append the chunk given by Content-Range: bytes {start}-{end}/{size|*}
+ * PUT    {box path}?uploadId={id}   with partNumber={n}, upload part n, counting from 1, in any order;
+ *                                   needs Upload-Length and Upload-Part-Size declared at the start
+ * HEAD   {box path}?uploadId={id}   progress
+ * POST   {box path}?uploadId={id}   commit the received bytes as the box file
+ * DELETE {box path}?uploadId={id}   abort
+ * POST   /{org}/{name}/{version}?uploadId={id}&amp;uploadId={id}...
+ *                                   commit uploads of several box files of the version at once
+ * </pre>
+ *
+ * Responses carry the number of bytes received so far in {@value #UPLOAD_OFFSET}; a chunk that does not
+ * start there, or whose body ends before its range does, is answered with 409 so the client can resume
+ * from the right place. A start may declare the size of the box in {@value #UPLOAD_LENGTH}, which chunks
+ * and the commit are then held to. Numbered parts need it, and the size of every part but the last in
+ * {@value #UPLOAD_PART_SIZE}; each part is written straight to its offset in the staged file, and parts of
+ * one upload may be sent concurrently. The offset then covers the parts hashed so far, so a commit before
+ * every declared part is in is refused with 409. An upload takes either chunks or parts, not both.
+ * A commit may declare the SHA-256 of the box in {@value VagrantHostedHandler#CHECKSUM_SHA256}.
+ * Committing on the version path stores all listed uploads in one transaction, or none of them.
+ * Requests without an upload id, other than POST, pass through to the next handler.
+ *
+ * An upload is only visible to the user who started it; to anyone else its id is unknown. Starting and
+ * committing are POSTs, which the security handler checks as adds, so a commit that would replace a stored
+ * box file also needs the permission a plain PUT of that file does. An upload without any bytes is never
+ * committed.
+ */
+@Named
+@Singleton
+public class VagrantUploadHandler
+    extends ComponentSupport
+    implements Handler
+{
+  public static final String UPLOAD_ID = "uploadId";
+
+  public static final String UPLOAD_OFFSET = "Upload-Offset";
+
+  public static final String UPLOAD_LENGTH = "Upload-Length";
+
+  public static final String UPLOAD_PART_SIZE = "Upload-Part-Size";
+
+  public static final String PART_NUMBER = "partNumber";
+
+  private static final int MAX_PART_NUMBER = 10_000;
+
+  private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+|\\*)");
+
+  private final VagrantUploadManager uploadManager;
+
+  private final VagrantMetadataCache metadataCache;
+
+  @Inject
+  public VagrantUploadHandler(final VagrantUploadManager uploadManager, final VagrantMetadataCache metadataCache) {
+    this.uploadManager = uploadManager;
+    this.metadataCache = metadataCache;
+  }
+
+  @Nonnull
+  @Override
+  public Response handle(@Nonnull final Context context) throws Exception {
+    Request request = context.getRequest();
+    String method = request.getAction();
+    String uploadId = request.getParameters().get(UPLOAD_ID);
+    if (uploadId == null && !POST.equals(method)) {
+      return context.proceed();
+    }
+
+    Map<String, String> tokens = context.getAttributes().require(TokenMatcher.State.class).getTokens();
+    if (!tokens.containsKey("provider")) {
+      return publish(context, tokens);
+    }
+    String repositoryName = context.getRepository().getName();
+    String path = VagrantAssetPath.format(tokens);
+    String owner = UserIdHelper.get();
+
+    if (uploadId == null) {
+      return start(context, repositoryName, path, owner);
+    }
+
+    VagrantUploadSession session = uploadManager.get(uploadId, repositoryName, path, owner);
+    if (session == null) {
+      return HttpResponses.notFound("Unknown upload " + uploadId);
+    }
+
+    switch (method) {
+      case PUT:
+        String partNumber = request.getParameters().get(PART_NUMBER);
+        return partNumber != null ? writePart(request, partNumber, session) : append(request, session);
+      case GET:
+      case HEAD:
+        return progress(Status.success(HttpStatus.OK), session);
+      case POST:
+        return commit(context, session, tokens);
+      case DELETE:
+        uploadManager.remove(session);
+        return HttpResponses.noContent();
+      default:
+        return HttpResponses.methodNotAllowed(method, GET, HEAD, PUT, POST, DELETE);
+    }
+  }
+
+  private Response start(final Context context,
+                         final String repositoryName,
+                         final String path,
+                         final String owner)
+  {
+    Request request = context.getRequest();
+    long size = parseSize(request.getHeaders().get(UPLOAD_LENGTH));
+    long partSize = parseSize(request.getHeaders().get(UPLOAD_PART_SIZE));
+    if (size == 0 || partSize == 0) {
+      return HttpResponses.badRequest(UPLOAD_LENGTH + " and " + UPLOAD_PART_SIZE + " must be positive numbers");
+    }
+    if (partSize > 0 && size < 0) {
+      return HttpResponses.badRequest(UPLOAD_PART_SIZE + " needs " + UPLOAD_LENGTH);
+    }
+    if (partSize > 0 && VagrantUploadSession.partCount(size, partSize) > MAX_PART_NUMBER) {
+      return HttpResponses.badRequest("Uploads have at most " + MAX_PART_NUMBER + " parts");
+    }
+
+    VagrantUploadSession session = uploadManager.start(repositoryName, path, owner, size, partSize);
+    String location = context.getRepository().getUrl() + path + "?" + UPLOAD_ID + "=" + session.id();
+    Response.Builder response = new Response.Builder()
+        .status(Status.success(HttpStatus.CREATED))
+        .header(HttpHeaders.LOCATION, location)
+        .header(UPLOAD_OFFSET, "0");
+    if (size > 0) {
+      response.header(UPLOAD_LENGTH, Long.toString(size));
+    }
+    return response.build();
+  }
+
+  /**
+   * Parses a declared size; -1 if the header is absent, 0 if it is not a positive number.
+   */
+  private static long parseSize(@Nullable final String value) {
+    if (value == null) {
+      return -1;
+    }
+    String trimmed = value.trim();
+    return trimmed.matches("\\d{1,18}") ? Long.parseLong(trimmed) : 0;
+  }
+
+  private Response append(final Request request, final VagrantUploadSession session) throws Exception {
+    Payload payload = request.getPayload();
+    String contentRange = request.getHeaders().get(HttpHeaders.CONTENT_RANGE);
+    Matcher range = contentRange != null ? CONTENT_RANGE.matcher(contentRange) : null;
+    if (payload == null || range == null || !range.matches()) {
+      return HttpResponses.badRequest("Chunks need a body and a Content-Range of bytes {start}-{end}/{size|*}");
+    }
+
+    long start = Long.parseLong(range.group(1));
+    long end = Long.parseLong(range.group(2));
+    long size = "*".equals(range.group(3)) ? -1 : Long.parseLong(range.group(3));
+    if (end < start || (size >= 0 && end >= size)) {
+      return HttpResponses.badRequest("Invalid Content-Range " + contentRange);
+    }
+
+    long offset;
+    try (InputStream in = payload.openInputStream()) {
+      offset = session.append(start, end - start + 1, size, in);
+    }
+    catch (IllegalStateException e) {
+      return progress(Status.failure(HttpStatus.CONFLICT, e.getMessage()), session);
+    }
+    if (offset != end + 1) {
+      // what arrived is kept; the client resumes from the offset reported
+      return progress(Status.failure(HttpStatus.CONFLICT,
+          "Chunk of upload " + session.id() + " ended at offset " + offset + ", before " + (end + 1)), session);
+    }
+    return progress(Status.success(HttpStatus.NO_CONTENT), session);
+  }
+
+  private Response writePart(final Request request, final String part, final VagrantUploadSession session)
+      throws Exception
+  {
+    Payload payload = request.getPayload();
+    int partNumber = part.matches("\\d{1,5}") ? Integer.parseInt(part) : 0;
+    if (session.partCount() == 0) {
+      return HttpResponses.badRequest("Start the upload with " + UPLOAD_LENGTH + " and " + UPLOAD_PART_SIZE
+          + " to send it in parts");
+    }
+    if (payload == null || partNumber < 1 || partNumber > session.partCount()) {
+      return HttpResponses.badRequest("Parts need a body and a partNumber from 1 to " + session.partCount());
+    }
+
+    try (InputStream in = payload.openInputStream()) {
+      session.writePart(partNumber, in);
+    }
+    catch (IllegalStateException e) {
+      return progress(Status.failure(HttpStatus.CONFLICT, e.getMessage()), session);
+    }
+    return progress(Status.success(HttpStatus.NO_CONTENT), session);
+  }
+
+  private Response commit(final Context context,
+                          final VagrantUploadSession session,
+                          final Map<String, String> tokens) throws Exception
+  {
+    Response incomplete = checkReceived(session);
+    if (incomplete != null) {
+      return incomplete;
+    }
+
+    String org = tokens.get("org");
+    String name = tokens.get("name");
+    String declaredSha256 = context.getRequest().getHeaders().get(VagrantHostedHandler.CHECKSUM_SHA256);
+    HashCode expectedSha256 = declaredSha256 != null ? VagrantHostedHandler.parseSha256(declaredSha256) : null;
+    if (declaredSha256 != null && expectedSha256 == null) {
+      return HttpResponses.badRequest(VagrantHostedHandler.CHECKSUM_SHA256 + " must be 64 hex digits");
+    }
+
+    Map<HashAlgorithm, HashCode> hashes;
+    try {
+      hashes = session.complete();
+    }
+    catch (IllegalStateException e) {
+      return progress(Status.failure(HttpStatus.CONFLICT, e.getMessage()), session);
+    }
+    if (expectedSha256 != null && !expectedSha256.equals(hashes.get(SHA256))) {
+      // the session stays open so the client can abort it, or re-commit without the wrong declaration
+      return progress(Status.failure(HttpStatus.BAD_REQUEST,
+          "SHA-256 of upload " + session.id() + " is " + hashes.get(SHA256) + ", not the declared " + expectedSha256),
+          session);
+    }
+
+    VagrantContentFacet contentFacet = context.getRepository().facet(VagrantContentFacet.class);
+    ensureMayReplace(context, contentFacet, session.path());
+    try {
+      contentFacet.put(session.path(), session.file(), hashes,
+          org, name, tokens.get("version"), tokens.get("provider"));
+    }
+    finally {
+      metadataCache.invalidate(context.getRepository().getName(), org, name);
+    }
+    uploadManager.remove(session);
+    return HttpResponses.created();
+  }
+
+  /**
+   * Commits the listed uploads, which must be complete box files of the version, one per path.
+   */
+  private Response publish(final Context context, final Map<String, String> tokens) throws Exception {
+    List<String> uploadIds = context.getRequest().getParameters().getAll(UPLOAD_ID);
+    if (uploadIds == null || uploadIds.isEmpty()) {
+      return HttpResponses.badRequest("List the uploads to publish with " + UPLOAD_ID);
+    }
+
+    String org = tokens.get("org");
+    String name = tokens.get("name");
+    String version = tokens.get("version");
+    String repositoryName = context.getRepository().getName();
+    String owner = UserIdHelper.get();
+
+    Map<String, VagrantUploadSession> sessions = new LinkedHashMap<>();
+    for (String uploadId : uploadIds) {
+      VagrantUploadSession session = uploadManager.get(uploadId, repositoryName, owner);
+      if (session == null) {
+        return HttpResponses.notFound("Unknown upload " + uploadId);
+      }
+      VagrantAssetPath boxPath = VagrantAssetPath.parse(session.path());
+      if (boxPath == null || !boxPath.isBox(org, name) || !boxPath.version().equals(version)) {
+        return HttpResponses.badRequest("Upload " + uploadId + " of " + session.path() + " is not of "
+            + org + "/" + name + " " + version);
+      }
+      if (sessions.put(session.path(), session) != null) {
+        return HttpResponses.badRequest("More than one upload of " + session.path());
+      }
+    }
+
+    List<VagrantStagedBox> boxes = new ArrayList<>(sessions.size());
+    for (VagrantUploadSession session : sessions.values()) {
+      Response incomplete = checkReceived(session);
+      if (incomplete != null) {
+        return incomplete;
+      }
+      try {
+        boxes.add(new VagrantStagedBox(session.path(), VagrantAssetPath.parse(session.path()).provider(),
+            session.file(), session.complete()));
+      }
+      catch (IllegalStateException e) {
+        return progress(Status.failure(HttpStatus.CONFLICT, e.getMessage()), session);
+      }
+    }
+
+    VagrantContentFacet contentFacet = context.getRepository().facet(VagrantContentFacet.class);
+    for (String path : sessions.keySet()) {
+      ensureMayReplace(context, contentFacet, path);
+    }
+    try {
+      contentFacet.putVersion(org, name, version, boxes);
+    }
+    finally {
+      metadataCache.invalidate(repositoryName, org, name);
+    }
+    sessions.values().forEach(uploadManager::remove);
+    return HttpResponses.created();
+  }
+
+  /**
+   * Returns a 409 if the upload has no bytes, or fewer than the size its client declared; else {@code null}.
+   */
+  @Nullable
+  private Response checkReceived(final VagrantUploadSession session) {
+    long offset = session.offset();
+    if (offset == 0) {
+      return progress(Status.failure(HttpStatus.CONFLICT, "Upload " + session.id() + " has no bytes"), session);
+    }
+    long expectedSize = session.expectedSize();
+    if (expectedSize >= 0 && offset != expectedSize) {
+      return progress(Status.failure(HttpStatus.CONFLICT,
+          "Upload " + session.id() + " has " + offset + " of " + expectedSize + " bytes"), session);
+    }
+    return null;
+  }
+
+  /**
+   * Replacing a stored box file needs the permission of a PUT to it, not only the add a POST was checked for.
+   */
+  private void ensureMayReplace(final Context context, final VagrantContentFacet contentFacet, final String path) {
+    if (contentFacet.head(path).isPresent()) {
+      context.getRepository().facet(SecurityFacet.class)
+          .ensurePermitted(new Request.Builder().action(PUT).path(path).build());
+    }
+  }
+
+  private Response progress(final Status status, final VagrantUploadSession session) {
+    Response.Builder response = new Response.Builder()
+        .status(status)
+        .header(UPLOAD_OFFSET, Long.toString(session.offset()));
+    long expectedSize = session.expectedSize();
+    if (expectedSize >= 0) {
+      response.header(UPLOAD_LENGTH, Long.toString(expectedSize));
+    }
+    return response.build();
+  }
+}
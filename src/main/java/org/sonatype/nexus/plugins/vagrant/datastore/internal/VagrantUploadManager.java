@@ -0,0 +1,150 @@
+package org.sonatype.nexus.plugins.vagrant.datastore.internal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.sonatype.goodies.common.ComponentSupport;
+import org.sonatype.nexus.common.app.ApplicationDirectories;
+import org.sonatype.nexus.common.event.EventAware;
+import org.sonatype.nexus.repository.manager.RepositoryDeletedEvent;
+
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.Subscribe;
+
+/**
+ * Resumable upload sessions of all Vagrant hosted repositories, staged under the work directory.
+ *
+ * Sessions live in memory: a restart abandons them and their staged files are removed on the next
+ * start. Sessions idle for longer than the configured expiry are dropped when a new one is started.
+ */
+@Named
+@Singleton
+public class VagrantUploadManager
+    extends ComponentSupport
+    implements EventAware
+{
+  private static final String STAGING_DIRECTORY = "vagrant-uploads";
+
+  private final ConcurrentMap<String, VagrantUploadSession> sessions = new ConcurrentHashMap<>();
+
+  private final Path stagingDirectory;
+
+  private final long expiryMillis;
+
+  @Inject
+  public VagrantUploadManager(final ApplicationDirectories applicationDirectories,
+                              @Named("${nexus.vagrant.upload.expiryHours:-24}") final int expiryHours)
+      throws IOException
+  {
+    this(applicationDirectories.getWorkDirectory(STAGING_DIRECTORY).toPath(), TimeUnit.HOURS.toMillis(expiryHours));
+  }
+
+  VagrantUploadManager(final Path stagingDirectory, final long expiryMillis) throws IOException {
+    this.stagingDirectory = stagingDirectory;
+    this.expiryMillis = expiryMillis;
+    deleteAbandonedFiles();
+  }
+
+  /**
+   * Starts a session for a box file of a repository, on behalf of the given user.
+   *
+   * @param size     size of the box file if the client declared it, else -1
+   * @param partSize size of its numbered parts if the client declared it, else -1
+   */
+  public VagrantUploadSession start(final String repositoryName,
+                                    final String path,
+                                    final String owner,
+                                    final long size,
+                                    final long partSize)
+  {
+    expireIdleSessions();
+    String id = UUID.randomUUID().toString();
+    VagrantUploadSession session = new VagrantUploadSession(id, repositoryName, path, owner,
+        stagingDirectory.resolve(id + ".part"), size, partSize);
+    sessions.put(id, session);
+    log.debug("Started upload {} of {} in {} for {}", id, path, repositoryName, owner);
+    return session;
+  }
+
+  /**
+   * Returns the session with this id if the user started it for this box file of this repository.
+   */
+  @Nullable
+  public VagrantUploadSession get(final String id, final String repositoryName, final String path,
+                                  final String owner)
+  {
+    VagrantUploadSession session = get(id, repositoryName, owner);
+    return session != null && session.path().equals(path) ? session : null;
+  }
+
+  /**
+   * Returns the session with this id if the user started it for a box file of this repository.
+   */
+  @Nullable
+  public VagrantUploadSession get(final String id, final String repositoryName, final String owner) {
+    VagrantUploadSession session = sessions.get(id);
+    return session != null && session.belongsTo(repositoryName, owner) ? session : null;
+  }
+
+  /**
+   * Ends a session, committed or aborted, and removes its staged file.
+   */
+  public void remove(final VagrantUploadSession session) {
+    if (sessions.remove(session.id(), session)) {
+      deleteQuietly(session);
+    }
+  }
+
+  @Subscribe
+  @AllowConcurrentEvents
+  public void on(final RepositoryDeletedEvent event) {
+    String repositoryName = event.getRepository().getName();
+    sessions.values().stream()
+        .filter(session -> session.repositoryName().equals(repositoryName))
+        .forEach(this::remove);
+  }
+
+  private void expireIdleSessions() {
+    long cutoff = System.currentTimeMillis() - expiryMillis;
+    sessions.values().stream()
+        .filter(session -> session.lastAccess() < cutoff)
+        .forEach(session -> {
+          log.info("Expiring idle upload {} of {} in {}", session.id(), session.path(), session.repositoryName());
+          remove(session);
+        });
+  }
+
+  private void deleteAbandonedFiles() throws IOException {
+    Files.createDirectories(stagingDirectory);
+    try (Stream<Path> files = Files.list(stagingDirectory)) {
+      files.forEach(file -> {
+        try {
+          Files.deleteIfExists(file);
+        }
+        catch (IOException e) {
+          log.warn("Could not delete abandoned upload {}", file, e);
+        }
+      });
+    }
+  }
+
+  private void deleteQuietly(final VagrantUploadSession session) {
+    try {
+      session.deleteFile();
+    }
+    catch (IOException e) {
+      log.warn("Could not delete staged upload {}", session.file(), e);
+    }
+  }
+}
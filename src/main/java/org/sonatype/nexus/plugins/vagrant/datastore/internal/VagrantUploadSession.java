@@ -0,0 +1,407 @@
+package org.sonatype.nexus.plugins.vagrant.datastore.internal;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.sonatype.nexus.common.hash.HashAlgorithm;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.sonatype.nexus.common.hash.HashAlgorithm.SHA1;
+import static org.sonatype.nexus.common.hash.HashAlgorithm.SHA256;
+
+/**
+ * A resumable upload of one box file, staged in a local file.
+ *
+ * Bytes arrive either as ranged chunks, which must come in order, or as numbered parts, which may be
+ * uploaded concurrently and in any order. Ranged chunks are fed to the running SHA-1 and SHA-256 as they
+ * are appended. Numbered parts need the size of the box and of its parts declared up front; each is written
+ * once, straight to its offset in the staged file, and hashed as soon as every part before it has landed.
+ */
+public class VagrantUploadSession
+{
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final String id;
+
+  private final String repositoryName;
+
+  private final String path;
+
+  private final String owner;
+
+  private final Path file;
+
+  private final long partSize;
+
+  private final int partCount;
+
+  @SuppressWarnings("deprecation")
+  private final Hasher sha1 = Hashing.sha1().newHasher();
+
+  private final Hasher sha256 = Hashing.sha256().newHasher();
+
+  /**
+   * Serializes hashing of numbered parts, which reads them back outside the session lock.
+   */
+  private final Object hashLock = new Object();
+
+  private long offset;
+
+  private long expectedSize;
+
+  private volatile long lastAccess = System.currentTimeMillis();
+
+  /**
+   * Numbered parts written in full, and those being written.
+   */
+  private final BitSet receivedParts = new BitSet();
+
+  private final BitSet writingParts = new BitSet();
+
+  /**
+   * Number of leading parts hashed; {@link #offset} is where the last of them ends.
+   */
+  private int hashedParts;
+
+  private boolean multipart;
+
+  /**
+   * Set once the upload is aborted or expired; nothing is written after, so no staged file outlives it.
+   */
+  private boolean closed;
+
+  private Map<HashAlgorithm, HashCode> hashes;
+
+  /**
+   * @param expectedSize size of the box file if the client declared it, else -1
+   * @param partSize     size of every numbered part but the last if the client declared it, else -1; needs
+   *                     {@code expectedSize}
+   */
+  VagrantUploadSession(final String id,
+                       final String repositoryName,
+                       final String path,
+                       final String owner,
+                       final Path file,
+                       final long expectedSize,
+                       final long partSize)
+  {
+    checkArgument(partSize < 0 || (partSize > 0 && expectedSize > 0), "Numbered parts need the size of the box");
+    this.id = id;
+    this.repositoryName = repositoryName;
+    this.path = path;
+    this.owner = owner;
+    this.file = file;
+    this.expectedSize = expectedSize;
+    this.partSize = partSize;
+    this.partCount = partSize > 0 ? partCount(expectedSize, partSize) : 0;
+  }
+
+  /**
+   * Number of parts a box of the given size is split into.
+   */
+  static int partCount(final long size, final long partSize) {
+    return (int) Math.min(Integer.MAX_VALUE, (size + partSize - 1) / partSize);
+  }
+
+  String id() {
+    return id;
+  }
+
+  String repositoryName() {
+    return repositoryName;
+  }
+
+  String path() {
+    return path;
+  }
+
+  /**
+   * Id of the user who started the upload.
+   */
+  String owner() {
+    return owner;
+  }
+
+  Path file() {
+    return file;
+  }
+
+  /**
+   * Number of numbered parts the upload takes, or 0 if it was started without declaring them.
+   */
+  int partCount() {
+    return partCount;
+  }
+
+  synchronized long offset() {
+    return offset;
+  }
+
+  synchronized long expectedSize() {
+    return expectedSize;
+  }
+
+  long lastAccess() {
+    return lastAccess;
+  }
+
+  boolean belongsTo(final String repositoryName, final String owner) {
+    return this.repositoryName.equals(repositoryName) && this.owner.equals(owner);
+  }
+
+  /**
+   * Appends up to {@code length} bytes at {@code start}, which must be the current offset.
+   *
+   * @param totalSize size of the whole box file if the client declared it, else -1
+   * @return the offset after the chunk; if the stream ends early only what arrived is kept
+   * @throws IllegalStateException if {@code start} is not the current offset, the chunk does not fit the
+   *                               declared size, or the upload is complete or closed
+   */
+  synchronized long append(final long start, final long length, final long totalSize, final InputStream in)
+      throws IOException
+  {
+    lastAccess = System.currentTimeMillis();
+    checkOpen();
+    if (hashes != null) {
+      throw new IllegalStateException("Upload " + id + " is complete");
+    }
+    if (start != offset) {
+      throw new IllegalStateException("Upload " + id + " is at offset " + offset + ", not " + start);
+    }
+    if (multipart) {
+      throw new IllegalStateException("Upload " + id + " is receiving numbered parts");
+    }
+    if (totalSize >= 0) {
+      if (expectedSize >= 0 && totalSize != expectedSize) {
+        throw new IllegalStateException("Upload " + id + " is of " + expectedSize + " bytes, not " + totalSize);
+      }
+      expectedSize = totalSize;
+    }
+    if (expectedSize >= 0 && start + length > expectedSize) {
+      throw new IllegalStateException("Upload " + id + " is of " + expectedSize + " bytes");
+    }
+    appendFrom(in, length);
+    return offset;
+  }
+
+  /**
+   * Writes part {@code partNumber}, counting from 1, at its offset in the staged file, then hashes it and
+   * any parts after it that are already written if it closes the gap after the parts hashed so far. Parts
+   * are written and hashed outside the session lock, so they upload concurrently. A part whose body ends
+   * before or after its size is dropped and may be sent again; so is a part whose upload is closed while
+   * it is being written.
+   *
+   * @return the offset after the parts hashed so far
+   * @throws IllegalStateException if the upload was started without declaring parts, has no such part,
+   *                               the part was already received or is being received, its body does not
+   *                               have the size of the part, the upload is receiving ranged chunks, or the
+   *                               upload is complete or closed
+   */
+  long writePart(final int partNumber, final InputStream in) throws IOException {
+    long start;
+    long length;
+    synchronized (this) {
+      lastAccess = System.currentTimeMillis();
+      checkPartAccepted(partNumber);
+      multipart = true;
+      writingParts.set(partNumber);
+      start = (partNumber - 1) * partSize;
+      length = Math.min(partSize, expectedSize - start);
+    }
+
+    try {
+      long written = writeAt(start, length, in);
+      if (written < length) {
+        throw new IllegalStateException(
+            "Part " + partNumber + " of upload " + id + " ended after " + written + " of " + length + " bytes");
+      }
+      if (in.read() >= 0) {
+        throw new IllegalStateException("Part " + partNumber + " of upload " + id + " is longer than " + length
+            + " bytes");
+      }
+      synchronized (this) {
+        if (closed) {
+          // the part may have recreated the file after the upload was closed
+          Files.deleteIfExists(file);
+          checkOpen();
+        }
+        receivedParts.set(partNumber);
+      }
+    }
+    finally {
+      synchronized (this) {
+        writingParts.clear(partNumber);
+      }
+    }
+
+    hashReceivedParts();
+    return offset();
+  }
+
+  private void checkPartAccepted(final int partNumber) {
+    checkOpen();
+    if (hashes != null) {
+      throw new IllegalStateException("Upload " + id + " is complete");
+    }
+    if (partCount == 0) {
+      throw new IllegalStateException("Upload " + id + " was started without declaring its parts");
+    }
+    if (offset > 0 && !multipart) {
+      throw new IllegalStateException("Upload " + id + " is receiving ranged chunks");
+    }
+    if (partNumber < 1 || partNumber > partCount) {
+      throw new IllegalStateException("Upload " + id + " has parts 1 to " + partCount + ", not " + partNumber);
+    }
+    if (receivedParts.get(partNumber)) {
+      throw new IllegalStateException("Part " + partNumber + " of upload " + id + " was already received");
+    }
+    if (writingParts.get(partNumber)) {
+      throw new IllegalStateException("Part " + partNumber + " of upload " + id + " is being received");
+    }
+  }
+
+  private void checkOpen() {
+    if (closed) {
+      throw new IllegalStateException("Upload " + id + " was closed");
+    }
+  }
+
+  /**
+   * Hashes the received parts following those already hashed, in order, reading them back from the staged
+   * file; the thread whose part closes a gap hashes everything up to the next one.
+   */
+  private void hashReceivedParts() throws IOException {
+    synchronized (hashLock) {
+      while (true) {
+        long start;
+        long length;
+        synchronized (this) {
+          if (closed || !receivedParts.get(hashedParts + 1)) {
+            return;
+          }
+          start = offset;
+          length = Math.min(partSize, expectedSize - start);
+        }
+        hashFrom(start, length);
+        synchronized (this) {
+          hashedParts++;
+          offset = start + length;
+        }
+      }
+    }
+  }
+
+  /**
+   * Writes up to {@code length} bytes at {@code start}, without moving the offset or hashing them.
+   *
+   * @return the number of bytes written
+   */
+  private long writeAt(final long start, final long length, final InputStream in) throws IOException {
+    byte[] buffer = new byte[BUFFER_SIZE];
+    long written = 0;
+    try (FileChannel channel = FileChannel.open(file, CREATE, WRITE)) {
+      int read;
+      while (written < length && (read = in.read(buffer, 0, (int) Math.min(buffer.length, length - written))) > 0) {
+        ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, read);
+        while (bytes.hasRemaining()) {
+          written += channel.write(bytes, start + written);
+        }
+      }
+    }
+    return written;
+  }
+
+  private void hashFrom(final long start, final long length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    try (FileChannel channel = FileChannel.open(file, READ)) {
+      long position = start;
+      long end = start + length;
+      while (position < end) {
+        buffer.clear();
+        buffer.limit((int) Math.min(buffer.capacity(), end - position));
+        int read = channel.read(buffer, position);
+        if (read < 0) {
+          throw new EOFException("Upload " + id + " ended at offset " + position + ", before " + end);
+        }
+        sha1.putBytes(buffer.array(), 0, read);
+        sha256.putBytes(buffer.array(), 0, read);
+        position += read;
+      }
+    }
+  }
+
+  /**
+   * Appends up to {@code length} bytes at the current offset, hashing them as they are written.
+   */
+  private void appendFrom(final InputStream in, final long length) throws IOException {
+    byte[] buffer = new byte[BUFFER_SIZE];
+    try (FileChannel channel = FileChannel.open(file, CREATE, WRITE)) {
+      channel.position(offset);
+      long remaining = length;
+      int read;
+      while (remaining > 0 && (read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining))) > 0) {
+        try {
+          ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, read);
+          while (bytes.hasRemaining()) {
+            channel.write(bytes);
+          }
+        }
+        catch (IOException e) {
+          // drop the partly written buffer so file and hashes still cover the same bytes
+          channel.truncate(offset);
+          throw e;
+        }
+        sha1.putBytes(buffer, 0, read);
+        sha256.putBytes(buffer, 0, read);
+        offset += read;
+        remaining -= read;
+      }
+    }
+  }
+
+  /**
+   * Completes the upload, refusing further chunks, and returns the hashes of everything received.
+   * Repeated calls return the same hashes, so a failed commit can be retried.
+   *
+   * @throws IllegalStateException if declared parts are still missing or being hashed, or the upload is closed
+   */
+  synchronized Map<HashAlgorithm, HashCode> complete() {
+    lastAccess = System.currentTimeMillis();
+    checkOpen();
+    if (multipart && hashedParts < partCount) {
+      int part = hashedParts + 1;
+      String state = receivedParts.get(part) ? "being hashed" : writingParts.get(part) ? "being received" : "missing";
+      throw new IllegalStateException("Upload " + id + " has " + hashedParts + " of " + partCount
+          + " parts assembled, part " + part + " is " + state);
+    }
+    if (hashes == null) {
+      hashes = new HashMap<>();
+      hashes.put(SHA1, sha1.hash());
+      hashes.put(SHA256, sha256.hash());
+    }
+    return hashes;
+  }
+
+  /**
+   * Closes the upload and deletes its staged file. Chunks and parts still arriving are refused.
+   */
+  synchronized void deleteFile() throws IOException {
+    closed = true;
+    Files.deleteIfExists(file);
+  }
+}
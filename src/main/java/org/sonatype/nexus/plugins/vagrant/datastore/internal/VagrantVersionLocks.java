@@ -0,0 +1,34 @@
+package org.sonatype.nexus.plugins.vagrant.datastore.internal;
+
+import java.util.concurrent.locks.Lock;
+
+import com.google.common.util.concurrent.Striped;
+
+/**
+ * Locks versions of boxes within one node, so writes to a version (uploads of its providers, deletes of its
+ * box files) run one at a time while other versions and boxes proceed. Versions share a lock only by hash
+ * collision, and a writer holds one version at a time, so no lock order is needed.
+ */
+final class VagrantVersionLocks
+{
+  private static final int DEFAULT_STRIPES = 64;
+
+  private final Striped<Lock> locks;
+
+  VagrantVersionLocks() {
+    this(DEFAULT_STRIPES);
+  }
+
+  VagrantVersionLocks(final int stripes) {
+    this.locks = Striped.lock(stripes);
+  }
+
+  /**
+   * Locks a version, waiting for the writer holding it; the caller unlocks the returned lock.
+   */
+  Lock lock(final String org, final String name, final String version) {
+    Lock lock = locks.get(org + '/' + name + '/' + version);
+    lock.lock();
+    return lock;
+  }
+}
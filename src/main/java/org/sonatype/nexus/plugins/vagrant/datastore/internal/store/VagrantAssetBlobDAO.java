@@ -1,8 +1,29 @@
 package org.sonatype.nexus.plugins.vagrant.datastore.internal.store;
 
+import java.util.Optional;
+
+import org.sonatype.nexus.blobstore.api.BlobRef;
 import org.sonatype.nexus.repository.content.store.AssetBlobDAO;
 
+import org.apache.ibatis.annotations.Param;
+
 public interface VagrantAssetBlobDAO
     extends AssetBlobDAO
 {
+  /**
+   * Finds a blob of the repository with this SHA-256 that an asset still references.
+   */
+  Optional<BlobRef> findBlobBySha256(
+      @Param("repositoryId") int repositoryId,
+      @Param("sha256") String sha256);
+
+  void createBlobIndex(
+      @Param("repositoryId") int repositoryId,
+      @Param("sha256") String sha256,
+      @Param("blobRef") BlobRef blobRef);
+
+  boolean updateBlobIndex(
+      @Param("repositoryId") int repositoryId,
+      @Param("sha256") String sha256,
+      @Param("blobRef") BlobRef blobRef);
 }
@@ -0,0 +1,41 @@
+package org.sonatype.nexus.plugins.vagrant.datastore.internal.store;
+
+import java.util.Optional;
+
+import javax.inject.Inject;
+
+import org.sonatype.nexus.blobstore.api.BlobRef;
+import org.sonatype.nexus.datastore.api.DataSessionSupplier;
+import org.sonatype.nexus.repository.content.store.AssetBlobStore;
+import org.sonatype.nexus.transaction.Transactional;
+
+import com.google.inject.assistedinject.Assisted;
+
+/**
+ * Vagrant {@link AssetBlobStore} that also maintains a per-repository SHA-256 index of box blobs, so identical
+ * box files published under several paths can share one blob.
+ */
+public class VagrantAssetBlobStore
+    extends AssetBlobStore<VagrantAssetBlobDAO>
+{
+  @Inject
+  public VagrantAssetBlobStore(
+      final DataSessionSupplier sessionSupplier,
+      @Assisted final String contentStoreName,
+      @Assisted final Class<VagrantAssetBlobDAO> daoClass)
+  {
+    super(sessionSupplier, contentStoreName, daoClass);
+  }
+
+  @Transactional
+  public Optional<BlobRef> findBlobBySha256(final int repositoryId, final String sha256) {
+    return dao().findBlobBySha256(repositoryId, sha256);
+  }
+
+  @Transactional
+  public void indexBlob(final int repositoryId, final String sha256, final BlobRef blobRef) {
+    if (!dao().updateBlobIndex(repositoryId, sha256, blobRef)) {
+      dao().createBlobIndex(repositoryId, sha256, blobRef);
+    }
+  }
+}
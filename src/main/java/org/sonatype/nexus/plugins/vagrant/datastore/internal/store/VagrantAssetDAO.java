@@ -1,8 +1,19 @@
 package org.sonatype.nexus.plugins.vagrant.datastore.internal.store;
 
+import java.util.Collection;
+
 import org.sonatype.nexus.repository.content.store.AssetDAO;
 
+import org.apache.ibatis.annotations.Param;
+
 public interface VagrantAssetDAO
     extends AssetDAO
 {
+  /**
+   * Fetches version, provider, path and blob checksums of every box file of one box in a single joined query.
+   */
+  Collection<VagrantBoxAssetData> browseBoxAssets(
+      @Param("repositoryId") int repositoryId,
+      @Param("namespace") String namespace,
+      @Param("name") String name);
 }
@@ -0,0 +1,35 @@
+package org.sonatype.nexus.plugins.vagrant.datastore.internal.store;
+
+import java.util.Collection;
+
+import javax.inject.Inject;
+
+import org.sonatype.nexus.datastore.api.DataSessionSupplier;
+import org.sonatype.nexus.repository.content.store.AssetStore;
+import org.sonatype.nexus.transaction.Transactional;
+
+import com.google.inject.assistedinject.Assisted;
+
+/**
+ * Vagrant {@link AssetStore} adding box-scoped queries.
+ */
+public class VagrantAssetStore
+    extends AssetStore<VagrantAssetDAO>
+{
+  @Inject
+  public VagrantAssetStore(
+      final DataSessionSupplier sessionSupplier,
+      @Assisted final String contentStoreName,
+      @Assisted final Class<VagrantAssetDAO> daoClass)
+  {
+    super(sessionSupplier, contentStoreName, daoClass);
+  }
+
+  @Transactional
+  public Collection<VagrantBoxAssetData> browseBoxAssets(final int repositoryId,
+                                                         final String namespace,
+                                                         final String name)
+  {
+    return dao().browseBoxAssets(repositoryId, namespace, name);
+  }
+}
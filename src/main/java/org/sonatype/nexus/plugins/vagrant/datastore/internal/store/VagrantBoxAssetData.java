@@ -0,0 +1,69 @@
+package org.sonatype.nexus.plugins.vagrant.datastore.internal.store;
+
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import org.sonatype.nexus.plugins.vagrant.datastore.VagrantBoxAsset;
+import org.sonatype.nexus.plugins.vagrant.internal.VagrantMetadataBuilder;
+
+/**
+ * {@link VagrantBoxAsset} row returned by {@link VagrantAssetDAO#browseBoxAssets}.
+ */
+public class VagrantBoxAssetData
+    implements VagrantBoxAsset
+{
+  private String path;
+
+  private String version;
+
+  private String provider;
+
+  private Map<String, String> checksums;
+
+  @Override
+  public String path() {
+    return path;
+  }
+
+  @Override
+  public String version() {
+    return version;
+  }
+
+  @Override
+  public String provider() {
+    return provider;
+  }
+
+  @Nullable
+  @Override
+  public String sha256() {
+    return VagrantMetadataBuilder.sha256(checksums);
+  }
+
+  public void setPath(final String path) {
+    this.path = path;
+  }
+
+  public void setVersion(final String version) {
+    this.version = version;
+  }
+
+  public void setProvider(final String provider) {
+    this.provider = provider;
+  }
+
+  public void setChecksums(final Map<String, String> checksums) {
+    this.checksums = checksums;
+  }
+
+  @Override
+  public String toString() {
+    return "VagrantBoxAssetData{" +
+        "path='" + path + '\'' +
+        ", version='" + version + '\'' +
+        ", provider='" + provider + '\'' +
+        '}';
+  }
+}
@@ -0,0 +1,189 @@
+package org.sonatype.nexus.plugins.vagrant.datastore.internal.store;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import org.sonatype.nexus.plugins.vagrant.datastore.VagrantBoxAsset;
+import org.sonatype.nexus.plugins.vagrant.datastore.VagrantBoxCatalog;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+
+/**
+ * {@link VagrantBoxCatalog} row of the vagrant_catalog table.
+ *
+ * Entries are stored as a compact JSON array of [path, version, provider, sha256] tuples.
+ */
+public class VagrantCatalogData
+    implements VagrantBoxCatalog
+{
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+  private int repositoryId;
+
+  private String namespace;
+
+  private String name;
+
+  private String entries;
+
+  private int boxCount;
+
+  private Long renderedSize;
+
+  private String stamp;
+
+  private OffsetDateTime lastUpdated;
+
+  private volatile List<VagrantBoxAsset> assets;
+
+  /**
+   * @param sortedAssets box files ordered by version, oldest first; must not be empty
+   * @param renderedSize  size of the compact catalog JSON rendered against an empty base URL
+   */
+  public static VagrantCatalogData of(final int repositoryId,
+                                      final String namespace,
+                                      final String name,
+                                      final List<? extends VagrantBoxAsset> sortedAssets,
+                                      final String stamp,
+                                      final long renderedSize)
+  {
+    VagrantCatalogData catalog = new VagrantCatalogData();
+    catalog.setRepositoryId(repositoryId);
+    catalog.setNamespace(namespace);
+    catalog.setName(name);
+    catalog.setEntries(encode(sortedAssets));
+    catalog.setBoxCount(sortedAssets.size());
+    catalog.setRenderedSize(renderedSize);
+    catalog.setStamp(stamp);
+    catalog.setLastUpdated(OffsetDateTime.now());
+    return catalog;
+  }
+
+  @Override
+  public List<VagrantBoxAsset> assets() {
+    List<VagrantBoxAsset> decoded = assets;
+    if (decoded == null) {
+      decoded = decode(entries);
+      assets = decoded;
+    }
+    return decoded;
+  }
+
+  @Override
+  public int boxCount() {
+    return boxCount;
+  }
+
+  @Nullable
+  @Override
+  public Long renderedSize() {
+    return renderedSize;
+  }
+
+  @Override
+  public String stamp() {
+    return stamp;
+  }
+
+  @Override
+  public OffsetDateTime lastUpdated() {
+    return lastUpdated;
+  }
+
+  public int repositoryId() {
+    return repositoryId;
+  }
+
+  public String namespace() {
+    return namespace;
+  }
+
+  public String name() {
+    return name;
+  }
+
+  public void setRepositoryId(final int repositoryId) {
+    this.repositoryId = repositoryId;
+  }
+
+  public void setNamespace(final String namespace) {
+    this.namespace = namespace;
+  }
+
+  public void setName(final String name) {
+    this.name = name;
+  }
+
+  public void setEntries(final String entries) {
+    this.entries = entries;
+    this.assets = null;
+  }
+
+  public void setBoxCount(final int boxCount) {
+    this.boxCount = boxCount;
+  }
+
+  public void setRenderedSize(@Nullable final Long renderedSize) {
+    this.renderedSize = renderedSize;
+  }
+
+  public void setStamp(final String stamp) {
+    this.stamp = stamp;
+  }
+
+  public void setLastUpdated(final OffsetDateTime lastUpdated) {
+    this.lastUpdated = lastUpdated;
+  }
+
+  static String encode(final Iterable<? extends VagrantBoxAsset> boxAssets) {
+    ArrayNode array = OBJECT_MAPPER.createArrayNode();
+    for (VagrantBoxAsset boxAsset : boxAssets) {
+      array.addArray()
+          .add(boxAsset.path())
+          .add(boxAsset.version())
+          .add(boxAsset.provider())
+          .add(boxAsset.sha256());
+    }
+    return array.toString();
+  }
+
+  static List<VagrantBoxAsset> decode(final String entries) {
+    try {
+      JsonNode array = OBJECT_MAPPER.readTree(entries);
+      List<VagrantBoxAsset> decoded = new ArrayList<>(array.size());
+      for (JsonNode entry : array) {
+        JsonNode sha256 = entry.get(3);
+        decoded.add(new VagrantCatalogEntry(
+            entry.get(0).asText(),
+            entry.get(1).asText(),
+            entry.get(2).asText(),
+            sha256 == null || sha256.isNull() ? null : sha256.asText()));
+      }
+      return Collections.unmodifiableList(decoded);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "VagrantCatalogData{" +
+        "repositoryId=" + repositoryId +
+        ", namespace='" + namespace + '\'' +
+        ", name='" + name + '\'' +
+        ", boxCount=" + boxCount +
+        ", renderedSize=" + renderedSize +
+        ", stamp='" + stamp + '\'' +
+        ", lastUpdated=" + lastUpdated +
+        '}';
+  }
+}
@@ -0,0 +1,52 @@
+package org.sonatype.nexus.plugins.vagrant.datastore.internal.store;
+
+import javax.annotation.Nullable;
+
+import org.sonatype.nexus.plugins.vagrant.datastore.VagrantBoxAsset;
+
+/**
+ * {@link VagrantBoxAsset} read back from a materialized catalog.
+ */
+public class VagrantCatalogEntry
+    implements VagrantBoxAsset
+{
+  private final String path;
+
+  private final String version;
+
+  private final String provider;
+
+  private final String sha256;
+
+  public VagrantCatalogEntry(final String path,
+                             final String version,
+                             final String provider,
+                             @Nullable final String sha256)
+  {
+    this.path = path;
+    this.version = version;
+    this.provider = provider;
+    this.sha256 = sha256;
+  }
+
+  @Override
+  public String path() {
+    return path;
+  }
+
+  @Override
+  public String version() {
+    return version;
+  }
+
+  @Override
+  public String provider() {
+    return provider;
+  }
+
+  @Nullable
+  @Override
+  public String sha256() {
+    return sha256;
+  }
+}
@@ -1,8 +1,38 @@
 package org.sonatype.nexus.plugins.vagrant.datastore.internal.store;
 
+import java.util.Optional;
+
 import org.sonatype.nexus.repository.content.store.ContentRepositoryDAO;
 
+import org.apache.ibatis.annotations.Param;
+
 public interface VagrantContentRepositoryDAO
     extends ContentRepositoryDAO
 {
+  Optional<VagrantCatalogData> readCatalog(
+      @Param("repositoryId") int repositoryId,
+      @Param("namespace") String namespace,
+      @Param("name") String name);
+
+  /**
+   * Locks the catalog row of a box, if present, until the end of the transaction.
+   */
+  Optional<String> lockCatalog(
+      @Param("repositoryId") int repositoryId,
+      @Param("namespace") String namespace,
+      @Param("name") String name);
+
+  void createCatalog(VagrantCatalogData catalog);
+
+  boolean updateCatalog(VagrantCatalogData catalog);
+
+  boolean deleteCatalog(
+      @Param("repositoryId") int repositoryId,
+      @Param("namespace") String namespace,
+      @Param("name") String name);
+
+  /**
+   * Deletes every catalog row of a repository.
+   */
+  int deleteCatalogs(@Param("repositoryId") int repositoryId);
 }
@@ -0,0 +1,59 @@
+package org.sonatype.nexus.plugins.vagrant.datastore.internal.store;
+
+import java.util.Optional;
+
+import javax.inject.Inject;
+
+import org.sonatype.nexus.datastore.api.DataSessionSupplier;
+import org.sonatype.nexus.repository.content.store.ContentRepositoryStore;
+import org.sonatype.nexus.transaction.Transactional;
+
+import com.google.inject.assistedinject.Assisted;
+
+/**
+ * Vagrant {@link ContentRepositoryStore} that also maintains the per-box materialized catalogs.
+ */
+public class VagrantContentRepositoryStore
+    extends ContentRepositoryStore<VagrantContentRepositoryDAO>
+{
+  @Inject
+  public VagrantContentRepositoryStore(
+      final DataSessionSupplier sessionSupplier,
+      @Assisted final String contentStoreName,
+      @Assisted final Class<VagrantContentRepositoryDAO> daoClass)
+  {
+    super(sessionSupplier, contentStoreName, daoClass);
+  }
+
+  @Transactional
+  public Optional<VagrantCatalogData> readCatalog(final int repositoryId, final String namespace, final String name) {
+    return dao().readCatalog(repositoryId, namespace, name);
+  }
+
+  /**
+   * Serializes catalog maintenance of one box; callers must already be in a transaction.
+   *
+   * @return the change stamp of the locked row, or empty if the box has no catalog row yet
+   */
+  @Transactional
+  public Optional<String> lockCatalog(final int repositoryId, final String namespace, final String name) {
+    return dao().lockCatalog(repositoryId, namespace, name);
+  }
+
+  @Transactional
+  public void saveCatalog(final VagrantCatalogData catalog) {
+    if (!dao().updateCatalog(catalog)) {
+      dao().createCatalog(catalog);
+    }
+  }
+
+  @Transactional
+  public boolean deleteCatalog(final int repositoryId, final String namespace, final String name) {
+    return dao().deleteCatalog(repositoryId, namespace, name);
+  }
+
+  @Transactional
+  public int deleteCatalogs(final int repositoryId) {
+    return dao().deleteCatalogs(repositoryId);
+  }
+}
@@ -0,0 +1,140 @@
+package org.sonatype.nexus.plugins.vagrant.internal;
+
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * Box file path: /{org}/{name}/{version}/{provider}/{filename}.box
+ *
+ * Parsing only records segment offsets; segments are copied out when asked for, and {@link #isBox}
+ * compares in place.
+ */
+public final class VagrantAssetPath
+{
+  public static final String EXTENSION = ".box";
+
+  private final String path;
+
+  private final int orgEnd;
+
+  private final int nameEnd;
+
+  private final int versionEnd;
+
+  private final int providerEnd;
+
+  private VagrantAssetPath(final String path,
+                           final int orgEnd,
+                           final int nameEnd,
+                           final int versionEnd,
+                           final int providerEnd)
+  {
+    this.path = path;
+    this.orgEnd = orgEnd;
+    this.nameEnd = nameEnd;
+    this.versionEnd = versionEnd;
+    this.providerEnd = providerEnd;
+  }
+
+  /**
+   * Returns the parsed path, or {@code null} if it is not a box file path.
+   */
+  @Nullable
+  public static VagrantAssetPath parse(final String path) {
+    if (path.isEmpty() || path.charAt(0) != '/') {
+      return null;
+    }
+    int orgEnd = segmentEnd(path, 1);
+    int nameEnd = segmentEnd(path, orgEnd + 1);
+    int versionEnd = segmentEnd(path, nameEnd + 1);
+    int providerEnd = segmentEnd(path, versionEnd + 1);
+    if (orgEnd < 0 || nameEnd < 0 || versionEnd < 0 || providerEnd < 0) {
+      return null;
+    }
+    // the filename runs to the end and needs at least one character before the extension
+    if (path.indexOf('/', providerEnd + 1) >= 0
+        || path.length() - providerEnd - 1 <= EXTENSION.length()
+        || !path.endsWith(EXTENSION)) {
+      return null;
+    }
+    return new VagrantAssetPath(path, orgEnd, nameEnd, versionEnd, providerEnd);
+  }
+
+  /**
+   * Index of the '/' ending the non-empty segment starting at {@code start}, or -1.
+   */
+  private static int segmentEnd(final String path, final int start) {
+    if (start <= 0) {
+      return -1;
+    }
+    int end = path.indexOf('/', start);
+    return end > start ? end : -1;
+  }
+
+  public static String format(final String org,
+                              final String name,
+                              final String version,
+                              final String provider,
+                              final String filename)
+  {
+    return new StringBuilder(org.length() + name.length() + version.length() + provider.length()
+        + filename.length() + 5 + EXTENSION.length())
+        .append('/').append(org)
+        .append('/').append(name)
+        .append('/').append(version)
+        .append('/').append(provider)
+        .append('/').append(filename).append(EXTENSION)
+        .toString();
+  }
+
+  /**
+   * Formats the path from the org, name, version, provider and filename tokens of a box file route.
+   */
+  public static String format(final Map<String, String> tokens) {
+    return format(tokens.get("org"), tokens.get("name"), tokens.get("version"), tokens.get("provider"),
+        tokens.get("filename"));
+  }
+
+  /**
+   * Whether this path belongs to the box /{org}/{name}, without copying either segment.
+   */
+  public boolean isBox(final String org, final String name) {
+    return org.length() == orgEnd - 1
+        && name.length() == nameEnd - orgEnd - 1
+        && path.startsWith(org, 1)
+        && path.startsWith(name, orgEnd + 1);
+  }
+
+  public String org() {
+    return path.substring(1, orgEnd);
+  }
+
+  public String name() {
+    return path.substring(orgEnd + 1, nameEnd);
+  }
+
+  public String version() {
+    return path.substring(nameEnd + 1, versionEnd);
+  }
+
+  public String provider() {
+    return path.substring(versionEnd + 1, providerEnd);
+  }
+
+  /**
+   * File name without the {@value #EXTENSION} extension.
+   */
+  public String filename() {
+    return path.substring(providerEnd + 1, path.length() - EXTENSION.length());
+  }
+
+  public String path() {
+    return path;
+  }
+
+  @Override
+  public String toString() {
+    return path;
+  }
+}
@@ -1,23 +1,39 @@
 package org.sonatype.nexus.plugins.vagrant.internal;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
+import javax.annotation.Nullable;
+import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
-import org.sonatype.nexus.plugins.vagrant.model.VagrantBoxMetadata;
-import org.sonatype.nexus.plugins.vagrant.model.VagrantBoxProvider;
-import org.sonatype.nexus.plugins.vagrant.model.VagrantBoxVersion;
+import org.sonatype.nexus.common.hash.HashAlgorithm;
+import org.sonatype.nexus.plugins.vagrant.datastore.VagrantBoxAsset;
+import org.sonatype.nexus.plugins.vagrant.datastore.VagrantBoxCatalog;
 import org.sonatype.nexus.repository.content.fluent.FluentAsset;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+
+import static org.sonatype.nexus.common.hash.HashAlgorithm.SHA256;
 
 /**
- * Builds Vagrant catalog metadata JSON by scanning stored assets.
+ * Builds Vagrant catalog metadata JSON from the box asset rows of a box.
  *
  * Asset paths follow: /{org}/{name}/{version}/{provider}/{filename}.box
  */
@@ -25,73 +41,201 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 @Singleton
 public class VagrantMetadataBuilder {
 
-  private static final Pattern ASSET_PATH_PATTERN =
-      Pattern.compile("^/([^/]+)/([^/]+)/([^/]+)/([^/]+)/[^/]+\\.box$");
+  /**
+   * Upper-case key some older blob checksum maps were written with.
+   */
+  private static final String LEGACY_SHA256_KEY = "SHA256";
+
+  private static final JsonFactory JSON_FACTORY = JsonFactory.builder()
+      .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+      .build();
 
-  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+  private final boolean pretty;
+
+  public VagrantMetadataBuilder() {
+    this(false);
+  }
 
   /**
-   * Build metadata for a specific box by scanning all matching assets.
+   * @param pretty whether {@link #writeJson} indents its output; compact by default
    */
-  public VagrantBoxMetadata buildMetadata(final String baseUrl,
-                                          final String org,
-                                          final String name,
-                                          final Iterable<FluentAsset> assets)
-  {
-    VagrantBoxMetadata metadata = new VagrantBoxMetadata(org + "/" + name);
-    metadata.setDescription("Vagrant box " + org + "/" + name);
+  @Inject
+  public VagrantMetadataBuilder(@Named("${nexus.vagrant.metadata.pretty:-false}") final boolean pretty) {
+    this.pretty = pretty;
+  }
 
-    Map<String, VagrantBoxVersion> versionMap = new LinkedHashMap<>();
+  /**
+   * Returns the rows ordered by {@link VagrantVersion}, keeping the relative order of providers within
+   * a version. Each distinct version string is parsed once.
+   */
+  public <T extends VagrantBoxAsset> List<T> sortByVersion(final Iterable<T> boxAssets) {
+    Map<String, VagrantVersion> parsed = new HashMap<>();
+    List<T> sorted = new ArrayList<>();
+    for (T boxAsset : boxAssets) {
+      parsed.computeIfAbsent(boxAsset.version(), VagrantVersion::parse);
+      sorted.add(boxAsset);
+    }
+    sorted.sort(Comparator.comparing(boxAsset -> parsed.get(boxAsset.version())));
+    return sorted;
+  }
 
-    for (FluentAsset asset : assets) {
-      String path = asset.path();
-      Matcher matcher = ASSET_PATH_PATTERN.matcher(path);
-      if (!matcher.matches()) {
-        continue;
-      }
+  /**
+   * Change stamp of a box: a hash of its path-sorted asset paths and checksums, so it is
+   * independent of the order rows were fetched in and of the URL the catalog is served from.
+   */
+  public String stamp(final Iterable<? extends VagrantBoxAsset> boxAssets) {
+    List<VagrantBoxAsset> sorted = new ArrayList<>();
+    boxAssets.forEach(sorted::add);
+    sorted.sort(Comparator.comparing(VagrantBoxAsset::path));
+
+    Hasher hasher = Hashing.sha256().newHasher();
+    for (VagrantBoxAsset boxAsset : sorted) {
+      hasher.putString(boxAsset.path(), StandardCharsets.UTF_8).putByte((byte) 0);
+      String checksum = boxAsset.sha256();
+      hasher.putString(checksum != null ? checksum : "", StandardCharsets.UTF_8).putByte((byte) 0);
+    }
+    return hasher.hash().toString();
+  }
 
-      String assetOrg = matcher.group(1);
-      String assetName = matcher.group(2);
-      if (!org.equals(assetOrg) || !name.equals(assetName)) {
-        continue;
-      }
+  /**
+   * Strong validator for the catalog of a box with the given change stamp, rendered against the base URL.
+   */
+  public String etag(final String baseUrl, final String stamp) {
+    return Hashing.sha256().newHasher()
+        .putString(baseUrl, StandardCharsets.UTF_8)
+        .putByte((byte) 0)
+        .putString(stamp, StandardCharsets.UTF_8)
+        .hash()
+        .toString();
+  }
 
-      String version = matcher.group(3);
-      String provider = matcher.group(4);
+  /**
+   * Streams the catalog for a box straight from its rows. Versions keep the order they are first seen in,
+   * so rows should already be {@link #sortByVersion sorted}; absent checksums are omitted rather than
+   * written as null.
+   */
+  public void writeJson(final String baseUrl,
+                        final String org,
+                        final String name,
+                        final Iterable<? extends VagrantBoxAsset> boxAssets,
+                        final OutputStream out) throws IOException
+  {
+    writeJson(baseUrl, org, name, boxAssets, out, pretty);
+  }
 
-      VagrantBoxVersion boxVersion = versionMap.computeIfAbsent(version, VagrantBoxVersion::new);
+  /**
+   * Size in bytes of the compact catalog JSON of a box rendered against an empty base URL, to be recorded
+   * with its catalog row; see {@link #renderedSize(VagrantBoxCatalog, String)}.
+   */
+  public long renderedSize(final String org,
+                           final String name,
+                           final Iterable<? extends VagrantBoxAsset> sortedAssets)
+  {
+    CountingOutputStream out = new CountingOutputStream(ByteStreams.nullOutputStream());
+    try {
+      writeJson("", org, name, sortedAssets, out, false);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return out.getCount();
+  }
 
-      String downloadUrl = baseUrl + path;
-      String checksum = extractChecksum(asset);
+  /**
+   * Size in bytes of {@link #writeJson} output for a catalog, derived from its recorded size without
+   * rendering: the base URL is written once per box file. Returns -1 if the catalog predates the recorded
+   * size, output is pretty-printed, or the base URL has characters JSON would escape.
+   */
+  public long renderedSize(final VagrantBoxCatalog catalog, final String baseUrl) {
+    Long size = catalog.renderedSize();
+    if (size == null || pretty || needsEscaping(baseUrl)) {
+      return -1;
+    }
+    return size + (long) catalog.boxCount() * baseUrl.getBytes(StandardCharsets.UTF_8).length;
+  }
 
-      VagrantBoxProvider boxProvider = new VagrantBoxProvider(
-          provider,
-          downloadUrl,
-          checksum != null ? "sha256" : null,
-          checksum
-      );
+  private static boolean needsEscaping(final String value) {
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c < ' ' || c == '"' || c == '\\') {
+        return true;
+      }
+    }
+    return false;
+  }
 
-      boxVersion.addProvider(boxProvider);
+  private void writeJson(final String baseUrl,
+                         final String org,
+                         final String name,
+                         final Iterable<? extends VagrantBoxAsset> boxAssets,
+                         final OutputStream out,
+                         final boolean prettyPrint) throws IOException
+  {
+    Map<String, List<VagrantBoxAsset>> versions = new LinkedHashMap<>();
+    for (VagrantBoxAsset boxAsset : boxAssets) {
+      versions.computeIfAbsent(boxAsset.version(), v -> new ArrayList<>(4)).add(boxAsset);
     }
 
-    versionMap.values().forEach(metadata::addVersion);
-    return metadata;
+    try (JsonGenerator generator = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8)) {
+      if (prettyPrint) {
+        generator.useDefaultPrettyPrinter();
+      }
+
+      generator.writeStartObject();
+      generator.writeStringField("name", org + "/" + name);
+      generator.writeStringField("description", "Vagrant box " + org + "/" + name);
+      generator.writeArrayFieldStart("versions");
+      for (Map.Entry<String, List<VagrantBoxAsset>> version : versions.entrySet()) {
+        generator.writeStartObject();
+        generator.writeStringField("version", version.getKey());
+        generator.writeStringField("status", "active");
+        generator.writeArrayFieldStart("providers");
+        for (VagrantBoxAsset boxAsset : version.getValue()) {
+          writeProvider(generator, baseUrl, boxAsset);
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+      }
+      generator.writeEndArray();
+      generator.writeEndObject();
+    }
   }
 
-  public String toJson(final VagrantBoxMetadata metadata) throws JsonProcessingException {
-    return OBJECT_MAPPER.writerWithDefaultPrettyPrinter().writeValueAsString(metadata);
+  private void writeProvider(final JsonGenerator generator,
+                             final String baseUrl,
+                             final VagrantBoxAsset boxAsset) throws IOException
+  {
+    generator.writeStartObject();
+    generator.writeStringField("name", boxAsset.provider());
+    generator.writeStringField("url", baseUrl + boxAsset.path());
+    String checksum = boxAsset.sha256();
+    if (checksum != null) {
+      generator.writeStringField("checksum_type", "sha256");
+      generator.writeStringField("checksum", checksum);
+    }
+    generator.writeEndObject();
   }
 
-  private String extractChecksum(final FluentAsset asset) {
+  /**
+   * SHA-256 of a box file, read from its asset blob.
+   */
+  @Nullable
+  public String checksum(final FluentAsset asset) {
     return asset.blob()
-        .map(blob -> {
-          Map<String, String> checksums = blob.checksums();
-          String sha = checksums.get("sha256");
-          if (sha == null) {
-            sha = checksums.get("SHA256");
-          }
-          return sha;
-        })
+        .map(blob -> sha256(blob.checksums()))
         .orElse(null);
   }
+
+  /**
+   * SHA-256 from the checksums of an asset blob, under the {@link HashAlgorithm} key or the legacy
+   * upper-case one.
+   */
+  @Nullable
+  public static String sha256(@Nullable final Map<String, String> checksums) {
+    if (checksums == null) {
+      return null;
+    }
+    String sha256 = checksums.get(SHA256.name());
+    return sha256 != null ? sha256 : checksums.get(LEGACY_SHA256_KEY);
+  }
 }
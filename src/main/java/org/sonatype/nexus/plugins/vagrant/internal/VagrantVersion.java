@@ -0,0 +1,136 @@
+package org.sonatype.nexus.plugins.vagrant.internal;
+
+import java.util.Comparator;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Parsed Vagrant box version, ordered like a semantic version.
+ *
+ * Release segments compare numerically ("1.10.0" &gt; "1.9.0") and missing segments count as zero.
+ * A pre-release ("1.0.0-rc.1") sorts before its release, with numeric identifiers below alphanumeric
+ * ones. Build metadata after '+' is ignored, except as a final tie-break so the order stays consistent
+ * with {@link #equals}.
+ */
+public final class VagrantVersion
+    implements Comparable<VagrantVersion>
+{
+  /**
+   * Orders version strings; prefer comparing parsed instances when sorting many entries.
+   */
+  public static final Comparator<String> ORDER = Comparator.comparing(VagrantVersion::parse);
+
+  private static final String[] NONE = new String[0];
+
+  private final String version;
+
+  private final String[] release;
+
+  private final String[] prerelease;
+
+  private VagrantVersion(final String version, final String[] release, final String[] prerelease) {
+    this.version = version;
+    this.release = release;
+    this.prerelease = prerelease;
+  }
+
+  public static VagrantVersion parse(final String version) {
+    checkNotNull(version);
+
+    int end = version.indexOf('+');
+    String core = end < 0 ? version : version.substring(0, end);
+
+    int dash = core.indexOf('-');
+    String releasePart = dash < 0 ? core : core.substring(0, dash);
+    String prereleasePart = dash < 0 ? null : core.substring(dash + 1);
+
+    return new VagrantVersion(version,
+        releasePart.isEmpty() ? NONE : releasePart.split("\\."),
+        prereleasePart == null ? NONE : prereleasePart.split("\\."));
+  }
+
+  public boolean isPrerelease() {
+    return prerelease.length > 0;
+  }
+
+  @Override
+  public int compareTo(final VagrantVersion other) {
+    int length = Math.max(release.length, other.release.length);
+    for (int i = 0; i < length; i++) {
+      int result = compareIdentifiers(
+          i < release.length ? release[i] : "0",
+          i < other.release.length ? other.release[i] : "0");
+      if (result != 0) {
+        return result;
+      }
+    }
+
+    if (isPrerelease() != other.isPrerelease()) {
+      return isPrerelease() ? -1 : 1;
+    }
+
+    int shared = Math.min(prerelease.length, other.prerelease.length);
+    for (int i = 0; i < shared; i++) {
+      int result = compareIdentifiers(prerelease[i], other.prerelease[i]);
+      if (result != 0) {
+        return result;
+      }
+    }
+    if (prerelease.length != other.prerelease.length) {
+      return Integer.compare(prerelease.length, other.prerelease.length);
+    }
+
+    return version.compareTo(other.version);
+  }
+
+  private static int compareIdentifiers(final String a, final String b) {
+    boolean aNumeric = isNumeric(a);
+    boolean bNumeric = isNumeric(b);
+    if (aNumeric && bNumeric) {
+      // compare digit strings without parsing, so date-like segments cannot overflow
+      String x = stripLeadingZeros(a);
+      String y = stripLeadingZeros(b);
+      return x.length() != y.length() ? Integer.compare(x.length(), y.length()) : x.compareTo(y);
+    }
+    if (aNumeric != bNumeric) {
+      return aNumeric ? -1 : 1;
+    }
+    return a.compareTo(b);
+  }
+
+  private static boolean isNumeric(final String identifier) {
+    if (identifier.isEmpty()) {
+      return false;
+    }
+    for (int i = 0; i < identifier.length(); i++) {
+      char c = identifier.charAt(i);
+      if (c < '0' || c > '9') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static String stripLeadingZeros(final String digits) {
+    int i = 0;
+    while (i < digits.length() - 1 && digits.charAt(i) == '0') {
+      i++;
+    }
+    return digits.substring(i);
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    return this == o || (o instanceof VagrantVersion && version.equals(((VagrantVersion) o).version));
+  }
+
+  @Override
+  public int hashCode() {
+    return version.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return version;
+  }
+}
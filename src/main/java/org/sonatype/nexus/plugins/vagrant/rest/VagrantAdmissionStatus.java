@@ -0,0 +1,59 @@
+package org.sonatype.nexus.plugins.vagrant.rest;
+
+import org.sonatype.nexus.plugins.vagrant.datastore.VagrantAdmission;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.swagger.annotations.ApiModelProperty;
+
+/**
+ * Uploads and catalog builds admitted and waiting on this node when the repository was read; read-only.
+ */
+public class VagrantAdmissionStatus
+{
+  @ApiModelProperty(value = "Box file uploads streaming into the blob store", readOnly = true, example = "2")
+  private final int uploadsInFlight;
+
+  @ApiModelProperty(value = "Box file uploads waiting for a free slot", readOnly = true, example = "0")
+  private final int uploadsQueued;
+
+  @ApiModelProperty(value = "Catalogs being rendered from the database", readOnly = true, example = "1")
+  private final int catalogBuildsInFlight;
+
+  @ApiModelProperty(value = "Catalog requests waiting for a free build slot", readOnly = true, example = "0")
+  private final int catalogBuildsQueued;
+
+  @JsonCreator
+  public VagrantAdmissionStatus(
+      @JsonProperty("uploadsInFlight") final int uploadsInFlight,
+      @JsonProperty("uploadsQueued") final int uploadsQueued,
+      @JsonProperty("catalogBuildsInFlight") final int catalogBuildsInFlight,
+      @JsonProperty("catalogBuildsQueued") final int catalogBuildsQueued)
+  {
+    this.uploadsInFlight = uploadsInFlight;
+    this.uploadsQueued = uploadsQueued;
+    this.catalogBuildsInFlight = catalogBuildsInFlight;
+    this.catalogBuildsQueued = catalogBuildsQueued;
+  }
+
+  static VagrantAdmissionStatus of(final VagrantAdmission admission) {
+    return new VagrantAdmissionStatus(admission.uploadsInFlight(), admission.uploadsQueued(),
+        admission.catalogBuildsInFlight(), admission.catalogBuildsQueued());
+  }
+
+  public int getUploadsInFlight() {
+    return uploadsInFlight;
+  }
+
+  public int getUploadsQueued() {
+    return uploadsQueued;
+  }
+
+  public int getCatalogBuildsInFlight() {
+    return catalogBuildsInFlight;
+  }
+
+  public int getCatalogBuildsQueued() {
+    return catalogBuildsQueued;
+  }
+}
@@ -0,0 +1,116 @@
+package org.sonatype.nexus.plugins.vagrant.rest;
+
+import javax.annotation.Nullable;
+import javax.validation.constraints.Min;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.swagger.annotations.ApiModelProperty;
+
+/**
+ * Vagrant specific settings of a hosted repository; unset values keep their defaults.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class VagrantAttributes
+{
+  public static final String UPLOAD_CONCURRENCY = "uploadConcurrency";
+
+  public static final String UPLOAD_QUEUE_SIZE = "uploadQueueSize";
+
+  public static final String UPLOAD_QUEUE_TIMEOUT_SECONDS = "uploadQueueTimeoutSeconds";
+
+  public static final String CATALOG_BUILD_CONCURRENCY = "catalogBuildConcurrency";
+
+  public static final String CATALOG_BUILD_QUEUE_SIZE = "catalogBuildQueueSize";
+
+  public static final String CATALOG_BUILD_QUEUE_TIMEOUT_SECONDS = "catalogBuildQueueTimeoutSeconds";
+
+  public static final String SERVE_STALE_CATALOGS = "serveStaleCatalogs";
+
+  @ApiModelProperty(value = "Box file uploads streamed into the blob store at once", example = "8")
+  @Min(1)
+  private final Integer uploadConcurrency;
+
+  @ApiModelProperty(value = "Uploads waiting for a free slot before further uploads are refused with 503",
+      example = "16")
+  @Min(0)
+  private final Integer uploadQueueSize;
+
+  @ApiModelProperty(value = "Seconds an upload waits in the queue for a free slot before it is refused with 503",
+      example = "30")
+  @Min(0)
+  private final Integer uploadQueueTimeoutSeconds;
+
+  @ApiModelProperty(value = "Catalogs rendered from the database at once on cache misses", example = "4")
+  @Min(1)
+  private final Integer catalogBuildConcurrency;
+
+  @ApiModelProperty(value = "Catalog requests waiting for a free build slot before further ones are refused with 503",
+      example = "32")
+  @Min(0)
+  private final Integer catalogBuildQueueSize;
+
+  @ApiModelProperty(value = "Seconds a catalog request waits for a free build slot before it is refused with 503",
+      example = "5")
+  @Min(0)
+  private final Integer catalogBuildQueueTimeoutSeconds;
+
+  @ApiModelProperty(value = "Whether to answer with the previous catalog of a box while it is being rebuilt, or "
+      + "while all build slots are busy", example = "false")
+  private final Boolean serveStaleCatalogs;
+
+  @JsonCreator
+  public VagrantAttributes(
+      @JsonProperty(UPLOAD_CONCURRENCY) @Nullable final Integer uploadConcurrency,
+      @JsonProperty(UPLOAD_QUEUE_SIZE) @Nullable final Integer uploadQueueSize,
+      @JsonProperty(UPLOAD_QUEUE_TIMEOUT_SECONDS) @Nullable final Integer uploadQueueTimeoutSeconds,
+      @JsonProperty(CATALOG_BUILD_CONCURRENCY) @Nullable final Integer catalogBuildConcurrency,
+      @JsonProperty(CATALOG_BUILD_QUEUE_SIZE) @Nullable final Integer catalogBuildQueueSize,
+      @JsonProperty(CATALOG_BUILD_QUEUE_TIMEOUT_SECONDS) @Nullable final Integer catalogBuildQueueTimeoutSeconds,
+      @JsonProperty(SERVE_STALE_CATALOGS) @Nullable final Boolean serveStaleCatalogs)
+  {
+    this.uploadConcurrency = uploadConcurrency;
+    this.uploadQueueSize = uploadQueueSize;
+    this.uploadQueueTimeoutSeconds = uploadQueueTimeoutSeconds;
+    this.catalogBuildConcurrency = catalogBuildConcurrency;
+    this.catalogBuildQueueSize = catalogBuildQueueSize;
+    this.catalogBuildQueueTimeoutSeconds = catalogBuildQueueTimeoutSeconds;
+    this.serveStaleCatalogs = serveStaleCatalogs;
+  }
+
+  @Nullable
+  public Integer getUploadConcurrency() {
+    return uploadConcurrency;
+  }
+
+  @Nullable
+  public Integer getUploadQueueSize() {
+    return uploadQueueSize;
+  }
+
+  @Nullable
+  public Integer getUploadQueueTimeoutSeconds() {
+    return uploadQueueTimeoutSeconds;
+  }
+
+  @Nullable
+  public Integer getCatalogBuildConcurrency() {
+    return catalogBuildConcurrency;
+  }
+
+  @Nullable
+  public Integer getCatalogBuildQueueSize() {
+    return catalogBuildQueueSize;
+  }
+
+  @Nullable
+  public Integer getCatalogBuildQueueTimeoutSeconds() {
+    return catalogBuildQueueTimeoutSeconds;
+  }
+
+  @Nullable
+  public Boolean getServeStaleCatalogs() {
+    return serveStaleCatalogs;
+  }
+}
@@ -1,5 +1,7 @@
 package org.sonatype.nexus.plugins.vagrant.rest;
 
+import javax.annotation.Nullable;
+
 import org.sonatype.nexus.plugins.vagrant.internal.VagrantFormat;
 import org.sonatype.nexus.repository.rest.api.model.CleanupPolicyAttributes;
 import org.sonatype.nexus.repository.rest.api.model.ComponentAttributes;
@@ -7,11 +9,17 @@ import org.sonatype.nexus.repository.rest.api.model.HostedStorageAttributes;
 import org.sonatype.nexus.repository.rest.api.model.SimpleApiHostedRepository;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 public class VagrantHostedApiRepository
     extends SimpleApiHostedRepository
 {
+  private final VagrantAttributes vagrant;
+
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  private final VagrantAdmissionStatus admission;
+
   @JsonCreator
   public VagrantHostedApiRepository(
       @JsonProperty("name") final String name,
@@ -19,8 +27,24 @@ public class VagrantHostedApiRepository
       @JsonProperty("online") final Boolean online,
       @JsonProperty("storage") final HostedStorageAttributes storage,
       @JsonProperty("cleanup") final CleanupPolicyAttributes cleanup,
-      @JsonProperty("component") final ComponentAttributes component)
+      @JsonProperty("component") final ComponentAttributes component,
+      @JsonProperty("vagrant") final VagrantAttributes vagrant,
+      @JsonProperty("admission") @Nullable final VagrantAdmissionStatus admission)
   {
     super(name, VagrantFormat.NAME, url, online, storage, cleanup, component);
+    this.vagrant = vagrant;
+    this.admission = admission;
+  }
+
+  public VagrantAttributes getVagrant() {
+    return vagrant;
+  }
+
+  /**
+   * Current load of the repository on the node that answered, or {@code null} if it is not started.
+   */
+  @Nullable
+  public VagrantAdmissionStatus getAdmission() {
+    return admission;
   }
 }
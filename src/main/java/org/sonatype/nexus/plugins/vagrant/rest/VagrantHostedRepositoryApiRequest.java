@@ -1,5 +1,8 @@
 package org.sonatype.nexus.plugins.vagrant.rest;
 
+import javax.annotation.Nullable;
+import javax.validation.Valid;
+
 import org.sonatype.nexus.plugins.vagrant.internal.VagrantFormat;
 import org.sonatype.nexus.repository.rest.api.model.CleanupPolicyAttributes;
 import org.sonatype.nexus.repository.rest.api.model.ComponentAttributes;
@@ -14,14 +17,24 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 public class VagrantHostedRepositoryApiRequest
     extends HostedRepositoryApiRequest
 {
+  @Valid
+  private final VagrantAttributes vagrant;
+
   @JsonCreator
   public VagrantHostedRepositoryApiRequest(
       @JsonProperty("name") final String name,
       @JsonProperty("online") final Boolean online,
       @JsonProperty("storage") final HostedStorageAttributes storage,
       @JsonProperty("cleanup") final CleanupPolicyAttributes cleanup,
-      @JsonProperty("component") final ComponentAttributes componentAttributes)
+      @JsonProperty("component") final ComponentAttributes componentAttributes,
+      @JsonProperty("vagrant") @Nullable final VagrantAttributes vagrant)
   {
     super(name, VagrantFormat.NAME, online, storage, cleanup, componentAttributes);
+    this.vagrant = vagrant;
+  }
+
+  @Nullable
+  public VagrantAttributes getVagrant() {
+    return vagrant;
   }
 }
@@ -2,10 +2,44 @@ package org.sonatype.nexus.plugins.vagrant.rest;
 
 import javax.inject.Named;
 
+import org.sonatype.nexus.common.collect.NestedAttributesMap;
+import org.sonatype.nexus.plugins.vagrant.internal.VagrantFormat;
+import org.sonatype.nexus.repository.config.Configuration;
 import org.sonatype.nexus.repository.rest.api.HostedRepositoryApiRequestToConfigurationConverter;
 
 @Named
 public class VagrantHostedRepositoryApiRequestToConfigurationConverter
     extends HostedRepositoryApiRequestToConfigurationConverter<VagrantHostedRepositoryApiRequest>
 {
+  @Override
+  public Configuration convert(final VagrantHostedRepositoryApiRequest request) {
+    Configuration configuration = super.convert(request);
+    VagrantAttributes vagrant = request.getVagrant();
+    if (vagrant != null) {
+      NestedAttributesMap attributes = configuration.attributes(VagrantFormat.NAME);
+      if (vagrant.getUploadConcurrency() != null) {
+        attributes.set(VagrantAttributes.UPLOAD_CONCURRENCY, vagrant.getUploadConcurrency());
+      }
+      if (vagrant.getUploadQueueSize() != null) {
+        attributes.set(VagrantAttributes.UPLOAD_QUEUE_SIZE, vagrant.getUploadQueueSize());
+      }
+      if (vagrant.getUploadQueueTimeoutSeconds() != null) {
+        attributes.set(VagrantAttributes.UPLOAD_QUEUE_TIMEOUT_SECONDS, vagrant.getUploadQueueTimeoutSeconds());
+      }
+      if (vagrant.getCatalogBuildConcurrency() != null) {
+        attributes.set(VagrantAttributes.CATALOG_BUILD_CONCURRENCY, vagrant.getCatalogBuildConcurrency());
+      }
+      if (vagrant.getCatalogBuildQueueSize() != null) {
+        attributes.set(VagrantAttributes.CATALOG_BUILD_QUEUE_SIZE, vagrant.getCatalogBuildQueueSize());
+      }
+      if (vagrant.getCatalogBuildQueueTimeoutSeconds() != null) {
+        attributes.set(VagrantAttributes.CATALOG_BUILD_QUEUE_TIMEOUT_SECONDS,
+            vagrant.getCatalogBuildQueueTimeoutSeconds());
+      }
+      if (vagrant.getServeStaleCatalogs() != null) {
+        attributes.set(VagrantAttributes.SERVE_STALE_CATALOGS, vagrant.getServeStaleCatalogs());
+      }
+    }
+    return configuration;
+  }
 }
@@ -1,8 +1,11 @@
 package org.sonatype.nexus.plugins.vagrant.rest;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Named;
 
+import org.sonatype.nexus.common.collect.NestedAttributesMap;
+import org.sonatype.nexus.plugins.vagrant.datastore.VagrantAdmission;
 import org.sonatype.nexus.plugins.vagrant.internal.VagrantFormat;
 import org.sonatype.nexus.repository.Repository;
 import org.sonatype.nexus.repository.rest.api.SimpleApiRepositoryAdapter;
@@ -28,8 +31,32 @@ public class VagrantRepositoryAdapter
           repository.getConfiguration().isOnline(),
           getHostedStorageAttributes(repository),
           getCleanupPolicyAttributes(repository),
-          getComponentAttributes(repository));
+          getComponentAttributes(repository),
+          getVagrantAttributes(repository),
+          repository.optionalFacet(VagrantAdmission.class).map(VagrantAdmissionStatus::of).orElse(null));
     }
     return super.adapt(repository);
   }
+
+  private static VagrantAttributes getVagrantAttributes(final Repository repository) {
+    NestedAttributesMap attributes = repository.getConfiguration().attributes(VagrantFormat.NAME);
+    return new VagrantAttributes(
+        intValue(attributes.get(VagrantAttributes.UPLOAD_CONCURRENCY)),
+        intValue(attributes.get(VagrantAttributes.UPLOAD_QUEUE_SIZE)),
+        intValue(attributes.get(VagrantAttributes.UPLOAD_QUEUE_TIMEOUT_SECONDS)),
+        intValue(attributes.get(VagrantAttributes.CATALOG_BUILD_CONCURRENCY)),
+        intValue(attributes.get(VagrantAttributes.CATALOG_BUILD_QUEUE_SIZE)),
+        intValue(attributes.get(VagrantAttributes.CATALOG_BUILD_QUEUE_TIMEOUT_SECONDS)),
+        booleanValue(attributes.get(VagrantAttributes.SERVE_STALE_CATALOGS)));
+  }
+
+  @Nullable
+  private static Integer intValue(@Nullable final Object value) {
+    return value instanceof Number ? ((Number) value).intValue() : null;
+  }
+
+  @Nullable
+  private static Boolean booleanValue(@Nullable final Object value) {
+    return value instanceof Boolean ? (Boolean) value : null;
+  }
 }
@@ -267,6 +267,130 @@ print('2.0.0' not in versions)
 fi
 section_close
 
+section_open "Test: Blob sharing"
+# Box files with the same content share one blob, so they report the same blob creation time
+ASSETS_FILE=$(mktemp)
+blob_created() {
+  curl -s -u "$AUTH" -o "$ASSETS_FILE" \
+    "http://localhost:$NEXUS_PORT/service/rest/v1/assets?repository=vagrant-test"
+  python3 -c "
+import json
+with open('$ASSETS_FILE') as f:
+    items = json.load(f).get('items', [])
+print(next((a.get('blobCreated') for a in items if a['path'].lstrip('/') == '$1'), ''))
+"
+}
+
+assert_download_matches() {
+  local file
+  file=$(mktemp)
+  HTTP_CODE=$(curl -s -o "$file" -w '%{http_code}' "$REPO_URL/$1")
+  assert_status 200 "$HTTP_CODE" "GET $1"
+  local sha256
+  sha256=$(shasum -a 256 "$file" 2>/dev/null || sha256sum "$file")
+  sha256=$(echo "$sha256" | awk '{print $1}')
+  if [ "$BOX_SHA256" = "$sha256" ]; then
+    pass "$1 still has the uploaded content"
+  else
+    fail "$1 checksum mismatch: uploaded=$BOX_SHA256 downloaded=$sha256"
+  fi
+  rm -f "$file"
+}
+
+# Publish the same content as two providers of a new version through resumable uploads
+UPLOAD_IDS=""
+for PROVIDER in virtualbox libvirt; do
+  BOX_URL="$REPO_URL/testorg/testbox/3.0.0/$PROVIDER/testbox.box"
+  BOX_SIZE=$(wc -c < "$DUMMY_BOX" | tr -d ' ')
+  UPLOAD_ID=$(curl -s -i -u "$AUTH" -X POST \
+    -H "Upload-Length: $BOX_SIZE" -H "Upload-Part-Size: $BOX_SIZE" "$BOX_URL" \
+    | grep -i '^location:' | sed 's/.*uploadId=//' | tr -d '\r')
+  HTTP_CODE=$(curl -s -o /dev/null -w '%{http_code}' \
+    -u "$AUTH" -X PUT --data-binary @"$DUMMY_BOX" \
+    "$BOX_URL?uploadId=$UPLOAD_ID&partNumber=1")
+  assert_status 204 "$HTTP_CODE" "PUT part 1 of testorg/testbox/3.0.0/$PROVIDER/testbox.box"
+  UPLOAD_IDS="$UPLOAD_IDS&uploadId=$UPLOAD_ID"
+done
+HTTP_CODE=$(curl -s -o /dev/null -w '%{http_code}' \
+  -u "$AUTH" -X POST "$REPO_URL/testorg/testbox/3.0.0?${UPLOAD_IDS#&}")
+assert_status 201 "$HTTP_CODE" "POST testorg/testbox/3.0.0 (publish two providers)"
+
+if command -v python3 >/dev/null 2>&1; then
+  SHARED=$(blob_created "testorg/testbox/1.0.0/virtualbox/testbox.box")
+  for BOX_PATH in testorg/testbox/1.0.0/libvirt/testbox.box \
+                  testorg/testbox/3.0.0/virtualbox/testbox.box \
+                  testorg/testbox/3.0.0/libvirt/testbox.box; do
+    CREATED=$(blob_created "$BOX_PATH")
+    if [ -n "$SHARED" ] && [ "$SHARED" = "$CREATED" ]; then
+      pass "$BOX_PATH shares the blob of testorg/testbox/1.0.0/virtualbox/testbox.box"
+    else
+      fail "$BOX_PATH has its own blob ($CREATED, not $SHARED)"
+    fi
+  done
+fi
+
+# Deleting one box file leaves the others sharing its blob downloadable
+HTTP_CODE=$(curl -s -o /dev/null -w '%{http_code}' \
+  -u "$AUTH" -X DELETE "$REPO_URL/testorg/testbox/1.0.0/libvirt/testbox.box")
+assert_status 204 "$HTTP_CODE" "DELETE testorg/testbox/1.0.0/libvirt/testbox.box"
+assert_download_matches "testorg/testbox/1.0.0/virtualbox/testbox.box"
+assert_download_matches "testorg/testbox/3.0.0/libvirt/testbox.box"
+rm -f "$ASSETS_FILE"
+section_close
+
+section_open "Test: Admission status"
+SETTINGS_FILE=$(mktemp)
+HTTP_CODE=$(curl -s -o "$SETTINGS_FILE" -w '%{http_code}' \
+  -u "$AUTH" "http://localhost:$NEXUS_PORT/service/rest/v1/repositorySettings")
+assert_status 200 "$HTTP_CODE" "GET repositorySettings"
+if command -v python3 >/dev/null 2>&1; then
+  ADMISSION=$(python3 -c "
+import json
+with open('$SETTINGS_FILE') as f:
+    repos = {r['name']: r for r in json.load(f)}
+a = repos.get('vagrant-test', {}).get('admission', {})
+print(' '.join(str(a.get(k)) for k in ('uploadsInFlight', 'uploadsQueued', 'catalogBuildsInFlight', 'catalogBuildsQueued')))
+" 2>&1)
+  if [ "$ADMISSION" = "0 0 0 0" ]; then
+    pass "Idle repository reports no uploads or catalog builds in flight or queued"
+  else
+    fail "Unexpected admission status: $ADMISSION"
+  fi
+fi
+rm -f "$SETTINGS_FILE"
+section_close
+
+section_open "Test: Concurrent upload of two providers"
+# Both uploads write the same version and catalog at once; neither may fail or be lost
+STATUS_DIR=$(mktemp -d)
+for PROVIDER in virtualbox libvirt; do
+  curl -s -o /dev/null -w '%{http_code}' \
+    -u "$AUTH" -X PUT --upload-file "$DUMMY_BOX" \
+    "$REPO_URL/testorg/testbox/4.0.0/$PROVIDER/testbox.box" > "$STATUS_DIR/$PROVIDER" &
+done
+wait
+for PROVIDER in virtualbox libvirt; do
+  assert_status 201 "$(cat "$STATUS_DIR/$PROVIDER")" "Concurrent PUT testorg/testbox/4.0.0/$PROVIDER/testbox.box"
+done
+rm -rf "$STATUS_DIR"
+
+if command -v python3 >/dev/null 2>&1; then
+  curl -s -o "$METADATA_FILE" "$REPO_URL/testorg/testbox"
+  PROVIDERS=$(python3 -c "
+import json
+with open('$METADATA_FILE') as f:
+    m = json.load(f)
+versions = {v['version']: v for v in m.get('versions', [])}
+print(' '.join(sorted(p['name'] for p in versions.get('4.0.0', {}).get('providers', []))))
+" 2>&1)
+  if [ "$PROVIDERS" = "libvirt virtualbox" ]; then
+    pass "Metadata lists both concurrently uploaded providers"
+  else
+    fail "Metadata lists providers '$PROVIDERS' for 4.0.0, expected 'libvirt virtualbox'"
+  fi
+fi
+section_close
+
 if ! command -v vagrant >/dev/null 2>&1; then
   section_open "Vagrant CLI not found — skipping interop tests"
   section_close
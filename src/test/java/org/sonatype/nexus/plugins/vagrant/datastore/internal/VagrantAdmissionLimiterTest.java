@@ -0,0 +1,64 @@
+package org.sonatype.nexus.plugins.vagrant.datastore.internal;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class VagrantAdmissionLimiterTest
+    extends TestSupport
+{
+  @Test
+  public void admitsUpToLimit() throws Exception {
+    VagrantAdmissionLimiter underTest = new VagrantAdmissionLimiter(2, 0, 0);
+
+    assertThat(underTest.acquire(), is(true));
+    assertThat(underTest.acquire(), is(true));
+    assertThat(underTest.acquire(), is(false));
+    assertThat(underTest.inFlight(), is(2));
+
+    underTest.release();
+    assertThat(underTest.acquire(), is(true));
+  }
+
+  @Test
+  public void queuedCallerIsAdmittedOnRelease() throws Exception {
+    VagrantAdmissionLimiter underTest = new VagrantAdmissionLimiter(1, 1, 5000);
+    assertThat(underTest.acquire(), is(true));
+
+    CompletableFuture<Boolean> waiting = CompletableFuture.supplyAsync(() -> {
+      try {
+        return underTest.acquire();
+      }
+      catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    while (underTest.queued() == 0) {
+      Thread.sleep(1);
+    }
+
+    // queue is full now
+    assertThat(underTest.acquire(), is(false));
+
+    underTest.release();
+    assertThat(waiting.get(5, TimeUnit.SECONDS), is(true));
+    assertThat(underTest.queued(), is(0));
+    assertThat(underTest.inFlight(), is(1));
+  }
+
+  @Test
+  public void queuedCallerGivesUpAfterQueueTimeout() throws Exception {
+    VagrantAdmissionLimiter underTest = new VagrantAdmissionLimiter(1, 1, 50);
+    assertThat(underTest.acquire(), is(true));
+
+    assertThat(underTest.acquire(), is(false));
+    assertThat(underTest.queued(), is(0));
+    assertThat(underTest.inFlight(), is(1));
+  }
+}
@@ -0,0 +1,161 @@
+package org.sonatype.nexus.plugins.vagrant.datastore.internal;
+
+import java.util.Optional;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+import org.sonatype.nexus.plugins.vagrant.datastore.VagrantContentFacet;
+import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.content.Asset;
+import org.sonatype.nexus.repository.content.Component;
+import org.sonatype.nexus.repository.content.event.asset.AssetDeletedEvent;
+import org.sonatype.nexus.repository.content.event.asset.AssetPurgedEvent;
+import org.sonatype.nexus.repository.content.event.component.ComponentDeletedEvent;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class VagrantCatalogMaintainerTest
+    extends TestSupport
+{
+  private static final String BASE_URL = "http://nexus/repository/vagrant-local";
+
+  private static final VagrantCatalog CATALOG =
+      new VagrantCatalog(BASE_URL, "{\"name\":\"myorg/mybox\"}".getBytes(), "etag", DateTime.now());
+
+  @Mock private Repository repository;
+  @Mock private VagrantContentFacet contentFacet;
+  @Mock private Asset asset;
+  @Mock private Component component;
+  @Mock private AssetDeletedEvent assetDeleted;
+  @Mock private ComponentDeletedEvent componentDeleted;
+  @Mock private AssetPurgedEvent assetPurged;
+
+  private VagrantMetadataCache metadataCache;
+
+  private VagrantCatalogMaintainer underTest;
+
+  @Before
+  public void setUp() {
+    when(repository.getName()).thenReturn("vagrant-local");
+    when(repository.optionalFacet(VagrantContentFacet.class)).thenReturn(Optional.of(contentFacet));
+    when(assetDeleted.getRepository()).thenReturn(Optional.of(repository));
+    when(assetDeleted.getAsset()).thenReturn(asset);
+    when(componentDeleted.getRepository()).thenReturn(Optional.of(repository));
+    when(componentDeleted.getComponent()).thenReturn(component);
+    when(assetPurged.getRepository()).thenReturn(Optional.of(repository));
+
+    metadataCache = new VagrantMetadataCache(1024 * 1024, 60);
+    metadataCache.put("vagrant-local", "myorg", "mybox", CATALOG,
+        metadataCache.generation("vagrant-local", "myorg", "mybox"));
+    underTest = new VagrantCatalogMaintainer(metadataCache);
+  }
+
+  @Test
+  public void assetDeletedElsewhereRefreshesCatalogThenInvalidatesCache() {
+    when(asset.path()).thenReturn("/myorg/mybox/1.0.0/virtualbox/mybox.box");
+    when(contentFacet.refreshCatalog("myorg", "mybox")).thenReturn(true);
+
+    underTest.on(assetDeleted);
+
+    verify(contentFacet).refreshCatalog("myorg", "mybox");
+    assertThat(metadataCache.get("vagrant-local", "myorg", "mybox", BASE_URL), is(nullValue()));
+    assertThat(metadataCache.getStale("vagrant-local", "myorg", "mybox", BASE_URL), is(CATALOG));
+  }
+
+  @Test
+  public void assetDeletedThroughFacetKeepsCachedCatalog() {
+    when(asset.path()).thenReturn("/myorg/mybox/1.0.0/virtualbox/mybox.box");
+    when(contentFacet.refreshCatalog("myorg", "mybox")).thenReturn(false);
+
+    underTest.on(assetDeleted);
+
+    assertThat(metadataCache.get("vagrant-local", "myorg", "mybox", BASE_URL), is(CATALOG));
+  }
+
+  @Test
+  public void deletesDuringRefreshAreCoalescedIntoOneMoreRefresh() {
+    when(asset.path()).thenReturn("/myorg/mybox/1.0.0/virtualbox/mybox.box");
+    when(contentFacet.refreshCatalog("myorg", "mybox"))
+        .thenAnswer(invocation -> {
+          underTest.on(assetDeleted);
+          underTest.on(assetDeleted);
+          return true;
+        })
+        .thenReturn(false);
+
+    underTest.on(assetDeleted);
+
+    verify(contentFacet, times(2)).refreshCatalog("myorg", "mybox");
+  }
+
+  @Test
+  public void failedRefreshDoesNotBlockLaterDeletes() {
+    when(asset.path()).thenReturn("/myorg/mybox/1.0.0/virtualbox/mybox.box");
+    when(contentFacet.refreshCatalog("myorg", "mybox"))
+        .thenThrow(new IllegalStateException("database unavailable"))
+        .thenReturn(true);
+
+    try {
+      underTest.on(assetDeleted);
+      fail("expected the refresh to fail");
+    }
+    catch (IllegalStateException e) {
+      // expected
+    }
+    underTest.on(assetDeleted);
+
+    verify(contentFacet, times(2)).refreshCatalog("myorg", "mybox");
+    assertThat(metadataCache.get("vagrant-local", "myorg", "mybox", BASE_URL), is(nullValue()));
+  }
+
+  @Test
+  public void assetOutsideBoxLayoutIsIgnored() {
+    when(asset.path()).thenReturn("/README.txt");
+
+    underTest.on(assetDeleted);
+
+    verify(contentFacet, never()).refreshCatalog(anyString(), anyString());
+  }
+
+  @Test
+  public void componentDeletedElsewhereRefreshesCatalog() {
+    when(component.namespace()).thenReturn("myorg");
+    when(component.name()).thenReturn("mybox");
+    when(contentFacet.refreshCatalog("myorg", "mybox")).thenReturn(true);
+
+    underTest.on(componentDeleted);
+
+    verify(contentFacet).refreshCatalog("myorg", "mybox");
+    assertThat(metadataCache.get("vagrant-local", "myorg", "mybox", BASE_URL), is(nullValue()));
+  }
+
+  @Test
+  public void purgeResetsEveryCatalogOfTheRepository() {
+    underTest.on(assetPurged);
+
+    verify(contentFacet).resetCatalogs();
+    assertThat(metadataCache.get("vagrant-local", "myorg", "mybox", BASE_URL), is(nullValue()));
+    assertThat(metadataCache.getStale("vagrant-local", "myorg", "mybox", BASE_URL), is(CATALOG));
+  }
+
+  @Test
+  public void otherFormatsAreIgnored() {
+    when(repository.optionalFacet(VagrantContentFacet.class)).thenReturn(Optional.empty());
+
+    underTest.on(assetPurged);
+
+    assertThat(metadataCache.get("vagrant-local", "myorg", "mybox", BASE_URL), is(CATALOG));
+  }
+}
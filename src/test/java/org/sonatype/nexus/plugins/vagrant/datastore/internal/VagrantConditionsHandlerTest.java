@@ -0,0 +1,97 @@
+package org.sonatype.nexus.plugins.vagrant.datastore.internal;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+import org.sonatype.nexus.common.collect.AttributesMap;
+import org.sonatype.nexus.repository.view.Context;
+import org.sonatype.nexus.repository.view.Headers;
+import org.sonatype.nexus.repository.view.Request;
+import org.sonatype.nexus.repository.view.Response;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.when;
+import static org.sonatype.nexus.plugins.vagrant.datastore.internal.VagrantConditionsHandler.notModified;
+
+public class VagrantConditionsHandlerTest
+    extends TestSupport
+{
+  private static final DateTime LAST_MODIFIED = new DateTime(2024, 1, 15, 12, 30, 45, DateTimeZone.UTC);
+
+  @Mock private Context context;
+  @Mock private Request request;
+  @Mock private Response proceeded;
+
+  private Headers headers;
+
+  private VagrantConditionsHandler underTest;
+
+  @Before
+  public void setUp() throws Exception {
+    headers = new Headers();
+    when(context.getRequest()).thenReturn(request);
+    when(context.getAttributes()).thenReturn(new AttributesMap());
+    when(context.proceed()).thenReturn(proceeded);
+    when(request.getHeaders()).thenReturn(headers);
+    underTest = new VagrantConditionsHandler();
+  }
+
+  @Test
+  public void unconditionalRequestIsModified() {
+    assertThat(notModified(context, "abc", LAST_MODIFIED), is(false));
+  }
+
+  @Test
+  public void ifNoneMatchListingTheTagIsNotModified() {
+    headers.set("If-None-Match", "\"xyz\", W/\"abc\"");
+
+    assertThat(notModified(context, "abc", LAST_MODIFIED), is(true));
+    assertThat(notModified(context, "abc--gzip", LAST_MODIFIED), is(false));
+  }
+
+  @Test
+  public void ifNoneMatchWildcardIsNotModified() {
+    headers.set("If-None-Match", "*");
+
+    assertThat(notModified(context, "abc", LAST_MODIFIED), is(true));
+  }
+
+  @Test
+  public void ifModifiedSinceComparesLastModified() {
+    headers.set("If-Modified-Since", "Mon, 15 Jan 2024 12:30:45 GMT");
+    assertThat(notModified(context, "abc", LAST_MODIFIED), is(true));
+
+    headers.set("If-Modified-Since", "Mon, 15 Jan 2024 12:30:44 GMT");
+    assertThat(notModified(context, "abc", LAST_MODIFIED), is(false));
+  }
+
+  @Test
+  public void ifModifiedSinceIsIgnoredWithIfNoneMatch() {
+    headers.set("If-None-Match", "\"xyz\"");
+    headers.set("If-Modified-Since", "Mon, 15 Jan 2024 12:30:45 GMT");
+
+    assertThat(notModified(context, "abc", LAST_MODIFIED), is(false));
+  }
+
+  @Test
+  public void invalidIfModifiedSinceIsIgnored() {
+    headers.set("If-Modified-Since", "yesterday");
+
+    assertThat(notModified(context, "abc", LAST_MODIFIED), is(false));
+  }
+
+  @Test
+  public void conditionsOutliveTheirRemovalFromTheRequest() throws Exception {
+    headers.set("If-None-Match", "\"abc\"");
+
+    assertThat(underTest.handle(context), is(proceeded));
+    headers.remove("If-None-Match");
+
+    assertThat(notModified(context, "abc", LAST_MODIFIED), is(true));
+  }
+}
@@ -1,11 +1,18 @@
 package org.sonatype.nexus.plugins.vagrant.datastore.internal;
 
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.zip.GZIPInputStream;
 
 import org.sonatype.goodies.testsupport.TestSupport;
+import org.sonatype.nexus.plugins.vagrant.datastore.VagrantBoxAsset;
+import org.sonatype.nexus.plugins.vagrant.datastore.VagrantBoxCatalog;
 import org.sonatype.nexus.plugins.vagrant.datastore.VagrantContentFacet;
 import org.sonatype.nexus.plugins.vagrant.internal.VagrantMetadataBuilder;
 import org.sonatype.nexus.plugins.vagrant.model.VagrantBoxMetadata;
@@ -14,19 +21,30 @@ import org.sonatype.nexus.plugins.vagrant.model.VagrantBoxVersion;
 import org.sonatype.nexus.repository.Repository;
 import org.sonatype.nexus.repository.view.Content;
 import org.sonatype.nexus.repository.view.Context;
+import org.sonatype.nexus.repository.view.Headers;
 import org.sonatype.nexus.repository.view.Payload;
 import org.sonatype.nexus.repository.view.Request;
 import org.sonatype.nexus.repository.view.Response;
 import org.sonatype.nexus.repository.view.matchers.token.TokenMatcher;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.HashCode;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.endsWith;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.sonatype.nexus.repository.http.HttpStatus.*;
@@ -34,6 +52,8 @@ import static org.sonatype.nexus.repository.http.HttpStatus.*;
 public class VagrantHostedHandlerTest
     extends TestSupport
 {
+  private static final String SHA256_HEX = "2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824";
+
   @Mock private Context context;
   @Mock private Request request;
   @Mock private Repository repository;
@@ -41,18 +61,29 @@ public class VagrantHostedHandlerTest
   @Mock private Content content;
   @Mock private Payload payload;
   @Mock private TokenMatcher.State tokenState;
+  @Mock private VagrantBoxAsset boxAsset;
+  @Mock private VagrantBoxCatalog boxCatalog;
+  @Mock private VagrantAdmissionFacet admissionFacet;
 
   private VagrantMetadataBuilder metadataBuilder;
+  private VagrantMetadataCache metadataCache;
+  private VagrantAdmissionLimiter catalogBuilds;
   private VagrantHostedHandler underTest;
 
   @Before
   public void setUp() {
     metadataBuilder = new VagrantMetadataBuilder();
-    underTest = new VagrantHostedHandler(metadataBuilder);
+    metadataCache = new VagrantMetadataCache(1024 * 1024, 60);
+    underTest = new VagrantHostedHandler(metadataBuilder, metadataCache);
+    catalogBuilds = new VagrantAdmissionLimiter(1, 0, 0);
 
     when(context.getRequest()).thenReturn(request);
+    when(request.getHeaders()).thenReturn(new Headers());
     when(context.getRepository()).thenReturn(repository);
     when(repository.facet(VagrantContentFacet.class)).thenReturn(contentFacet);
+    when(repository.facet(VagrantAdmissionFacet.class)).thenReturn(admissionFacet);
+    when(admissionFacet.catalogBuilds()).thenReturn(catalogBuilds);
+    when(repository.getName()).thenReturn("vagrant-local");
     when(repository.getUrl()).thenReturn("http://nexus/repository/vagrant-local");
     when(context.getAttributes()).thenReturn(new org.sonatype.nexus.common.collect.AttributesMap());
     context.getAttributes().set(TokenMatcher.State.class, tokenState);
@@ -86,6 +117,27 @@ public class VagrantHostedHandlerTest
     assertThat(response.getStatus().getCode(), is(NOT_FOUND));
   }
 
+  @Test
+  public void headBoxFileDoesNotOpenBlob() throws Exception {
+    setTokens(boxFileTokens());
+    when(request.getAction()).thenReturn("HEAD");
+    when(contentFacet.head("/myorg/mybox/1.0.0/virtualbox/mybox.box")).thenReturn(Optional.of(content));
+
+    Response response = underTest.handle(context);
+    assertThat(response.getStatus().getCode(), is(OK));
+    verify(contentFacet, never()).get(any());
+  }
+
+  @Test
+  public void headBoxFileReturns404WhenNotFound() throws Exception {
+    setTokens(boxFileTokens());
+    when(request.getAction()).thenReturn("HEAD");
+    when(contentFacet.head("/myorg/mybox/1.0.0/virtualbox/mybox.box")).thenReturn(Optional.empty());
+
+    Response response = underTest.handle(context);
+    assertThat(response.getStatus().getCode(), is(NOT_FOUND));
+  }
+
   // -- GET metadata tests --
 
   @Test
@@ -100,7 +152,7 @@ public class VagrantHostedHandlerTest
     metadata.addVersion(version);
 
     // Return assets that the builder will match
-    when(contentFacet.getBoxAssets("myorg", "mybox")).thenReturn(Collections.emptyList());
+    when(contentFacet.getCatalog("myorg", "mybox")).thenReturn(Optional.empty());
 
     // With no assets matching, metadata will have empty versions -> 404
     Response response = underTest.handle(context);
@@ -112,7 +164,241 @@ public class VagrantHostedHandlerTest
     Map<String, String> tokens = metadataTokens();
     setTokens(tokens);
     when(request.getAction()).thenReturn("GET");
-    when(contentFacet.getBoxAssets("myorg", "mybox")).thenReturn(Collections.emptyList());
+    when(contentFacet.getCatalog("myorg", "mybox")).thenReturn(Optional.empty());
+
+    Response response = underTest.handle(context);
+    assertThat(response.getStatus().getCode(), is(NOT_FOUND));
+  }
+
+  @Test
+  public void getMetadataIsServedFromCacheOnRepeatedRequests() throws Exception {
+    setTokens(metadataTokens());
+    when(request.getAction()).thenReturn("GET");
+    stubBoxAsset();
+
+    assertThat(underTest.handle(context).getStatus().getCode(), is(OK));
+    assertThat(underTest.handle(context).getStatus().getCode(), is(OK));
+
+    verify(contentFacet, times(1)).getCatalog("myorg", "mybox");
+  }
+
+  @Test
+  public void getMetadataCarriesEtagAndLastModified() throws Exception {
+    setTokens(metadataTokens());
+    when(request.getAction()).thenReturn("GET");
+    stubBoxAsset();
+
+    Response response = underTest.handle(context);
+    Content body = (Content) response.getPayload();
+
+    assertThat(body.getAttributes().get(Content.CONTENT_ETAG, String.class),
+        is(metadataBuilder.etag("http://nexus/repository/vagrant-local", "stamp1")));
+    assertThat(body.getAttributes().get(Content.CONTENT_LAST_MODIFIED), is(notNullValue()));
+  }
+
+  @Test
+  public void getMetadataServesGzipWhenAccepted() throws Exception {
+    setTokens(metadataTokens());
+    when(request.getAction()).thenReturn("GET");
+    when(request.getHeaders()).thenReturn(acceptEncoding("deflate, gzip;q=0.8"));
+    stubBoxAsset();
+
+    Response response = underTest.handle(context);
+    Content body = (Content) response.getPayload();
+
+    assertThat(response.getHeaders().get("Content-Encoding"), is("gzip"));
+    assertThat(response.getHeaders().get("Vary"), is("Accept-Encoding"));
+    try (InputStream in = new GZIPInputStream(body.openInputStream())) {
+      JsonNode root = new ObjectMapper().readTree(in);
+      assertThat(root.get("name").asText(), is("myorg/mybox"));
+    }
+    assertThat(body.getAttributes().get(Content.CONTENT_ETAG, String.class), endsWith("--gzip"));
+  }
+
+  @Test
+  public void getMetadataIgnoresGzipWithZeroQuality() throws Exception {
+    setTokens(metadataTokens());
+    when(request.getAction()).thenReturn("GET");
+    when(request.getHeaders()).thenReturn(acceptEncoding("gzip;q=0"));
+    stubBoxAsset();
+
+    Response response = underTest.handle(context);
+
+    assertThat(response.getHeaders().get("Content-Encoding"), is(nullValue()));
+  }
+
+  @Test
+  public void getMetadataMatchingIfNoneMatchIsNotModifiedWithoutRendering() throws Exception {
+    setTokens(metadataTokens());
+    when(request.getAction()).thenReturn("GET");
+    stubBoxAsset();
+    Headers headers = new Headers();
+    headers.set("If-None-Match", "\"other\", \"" + metadataBuilder.etag("http://nexus/repository/vagrant-local",
+        "stamp1") + "\"");
+    when(request.getHeaders()).thenReturn(headers);
+
+    Response response = underTest.handle(context);
+
+    assertThat(response.getStatus().getCode(), is(NOT_MODIFIED));
+    assertThat(response.getPayload(), is(nullValue()));
+    verify(boxCatalog, never()).assets();
+    assertThat(metadataCache.get("vagrant-local", "myorg", "mybox", "http://nexus/repository/vagrant-local"),
+        is(nullValue()));
+  }
+
+  @Test
+  public void getMetadataUsesConditionsKeptAheadOfConditionalRequestHandler() throws Exception {
+    setTokens(metadataTokens());
+    when(request.getAction()).thenReturn("GET");
+    stubBoxAsset();
+    Headers headers = new Headers();
+    headers.set("If-Modified-Since", "Fri, 01 Jan 2100 00:00:00 GMT");
+    when(request.getHeaders()).thenReturn(headers);
+    Context conditionsContext = mock(Context.class);
+    when(conditionsContext.getRequest()).thenReturn(request);
+    when(conditionsContext.getAttributes()).thenReturn(context.getAttributes());
+    new VagrantConditionsHandler().handle(conditionsContext);
+    // the conditional request handler removes the conditions from the request while it proceeds
+    when(request.getHeaders()).thenReturn(new Headers());
+
+    Response response = underTest.handle(context);
+
+    assertThat(response.getStatus().getCode(), is(NOT_MODIFIED));
+    verify(boxCatalog, never()).assets();
+  }
+
+  @Test
+  public void getMetadataStaleIfNoneMatchRendersCatalog() throws Exception {
+    setTokens(metadataTokens());
+    when(request.getAction()).thenReturn("GET");
+    stubBoxAsset();
+    Headers headers = new Headers();
+    headers.set("If-None-Match", "\"" + metadataBuilder.etag("http://nexus/repository/vagrant-local",
+        "stamp0") + "\"");
+    headers.set("If-Modified-Since", "Fri, 01 Jan 2100 00:00:00 GMT");
+    when(request.getHeaders()).thenReturn(headers);
+
+    Response response = underTest.handle(context);
+
+    assertThat(response.getStatus().getCode(), is(OK));
+    verify(boxCatalog).assets();
+  }
+
+  @Test
+  public void headMetadataIsAnsweredWithoutRendering() throws Exception {
+    setTokens(metadataTokens());
+    when(request.getAction()).thenReturn("HEAD");
+    stubBoxAsset();
+    when(boxCatalog.boxCount()).thenReturn(1);
+    when(boxCatalog.renderedSize())
+        .thenReturn(metadataBuilder.renderedSize("myorg", "mybox", Collections.singletonList(boxAsset)));
+    ByteArrayOutputStream rendered = new ByteArrayOutputStream();
+    metadataBuilder.writeJson("http://nexus/repository/vagrant-local", "myorg", "mybox",
+        Collections.singletonList(boxAsset), rendered);
+
+    Response response = underTest.handle(context);
+    Content body = (Content) response.getPayload();
+
+    assertThat(response.getStatus().getCode(), is(OK));
+    assertThat(body.getSize(), is((long) rendered.size()));
+    assertThat(body.getAttributes().get(Content.CONTENT_ETAG, String.class),
+        is(metadataBuilder.etag("http://nexus/repository/vagrant-local", "stamp1")));
+    verify(boxCatalog, never()).assets();
+  }
+
+  @Test
+  public void headMetadataWithoutRecordedSizeRendersCatalog() throws Exception {
+    setTokens(metadataTokens());
+    when(request.getAction()).thenReturn("HEAD");
+    stubBoxAsset();
+
+    Response response = underTest.handle(context);
+    Content body = (Content) response.getPayload();
+
+    assertThat(body.getSize() > 0, is(true));
+    verify(boxCatalog).assets();
+  }
+
+  @Test
+  public void gzipHeadMetadataRendersCatalog() throws Exception {
+    setTokens(metadataTokens());
+    when(request.getAction()).thenReturn("HEAD");
+    when(request.getHeaders()).thenReturn(acceptEncoding("gzip"));
+    stubBoxAsset();
+    when(boxCatalog.boxCount()).thenReturn(1);
+    when(boxCatalog.renderedSize()).thenReturn(100L);
+
+    Response response = underTest.handle(context);
+    Content body = (Content) response.getPayload();
+
+    assertThat(body.getSize(), is((long) metadataCache.get("vagrant-local", "myorg", "mybox",
+        "http://nexus/repository/vagrant-local").getGzipJson().length));
+  }
+
+  @Test
+  public void putInvalidatesCachedMetadata() throws Exception {
+    setTokens(metadataTokens());
+    when(request.getAction()).thenReturn("GET");
+    stubBoxAsset();
+    underTest.handle(context);
+
+    setTokens(boxFileTokens());
+    when(request.getAction()).thenReturn("PUT");
+    when(request.getPayload()).thenReturn(payload);
+    underTest.handle(context);
+
+    setTokens(metadataTokens());
+    when(request.getAction()).thenReturn("GET");
+    underTest.handle(context);
+
+    verify(contentFacet, times(2)).getCatalog("myorg", "mybox");
+  }
+
+  @Test
+  public void deleteInvalidatesCachedMetadata() throws Exception {
+    setTokens(metadataTokens());
+    when(request.getAction()).thenReturn("GET");
+    stubBoxAsset();
+    underTest.handle(context);
+
+    setTokens(boxFileTokens());
+    when(request.getAction()).thenReturn("DELETE");
+    when(contentFacet.delete("/myorg/mybox/1.0.0/virtualbox/mybox.box")).thenReturn(true);
+    underTest.handle(context);
+
+    setTokens(metadataTokens());
+    when(request.getAction()).thenReturn("GET");
+    underTest.handle(context);
+
+    verify(contentFacet, times(2)).getCatalog("myorg", "mybox");
+  }
+
+  // -- GET latest tests --
+
+  @Test
+  public void getLatestRedirectsToNewestVersionWithProvider() throws Exception {
+    setTokens(latestTokens("libvirt"));
+    when(request.getAction()).thenReturn("GET");
+    VagrantBoxAsset older = mockBoxAsset("/myorg/mybox/1.0.0/libvirt/mybox.box", "libvirt");
+    VagrantBoxAsset newer = mock(VagrantBoxAsset.class);
+    when(newer.provider()).thenReturn("virtualbox");
+    when(boxCatalog.assets()).thenReturn(Arrays.asList(older, newer));
+    when(contentFacet.getCatalog("myorg", "mybox")).thenReturn(Optional.of(boxCatalog));
+
+    Response response = underTest.handle(context);
+
+    assertThat(response.getStatus().getCode(), is(FOUND));
+    assertThat(response.getHeaders().get("Location"),
+        is("http://nexus/repository/vagrant-local/myorg/mybox/1.0.0/libvirt/mybox.box"));
+  }
+
+  @Test
+  public void getLatestReturns404ForUnknownProvider() throws Exception {
+    setTokens(latestTokens("hyperv"));
+    when(request.getAction()).thenReturn("GET");
+    when(boxCatalog.assets()).thenReturn(Arrays.asList(boxAsset));
+    when(boxAsset.provider()).thenReturn("virtualbox");
+    when(contentFacet.getCatalog("myorg", "mybox")).thenReturn(Optional.of(boxCatalog));
 
     Response response = underTest.handle(context);
     assertThat(response.getStatus().getCode(), is(NOT_FOUND));
@@ -132,6 +418,7 @@ public class VagrantHostedHandlerTest
     verify(contentFacet).put(
         eq("/myorg/mybox/1.0.0/virtualbox/mybox.box"),
         eq(payload),
+        isNull(),
         eq("myorg"),
         eq("mybox"),
         eq("1.0.0"),
@@ -139,6 +426,35 @@ public class VagrantHostedHandlerTest
     );
   }
 
+  @Test
+  public void putPassesDeclaredChecksumToFacet() throws Exception {
+    setTokens(boxFileTokens());
+    when(request.getAction()).thenReturn("PUT");
+    when(request.getPayload()).thenReturn(payload);
+    Headers headers = new Headers();
+    headers.set(VagrantHostedHandler.CHECKSUM_SHA256, SHA256_HEX.toUpperCase());
+    when(request.getHeaders()).thenReturn(headers);
+
+    Response response = underTest.handle(context);
+    assertThat(response.getStatus().getCode(), is(CREATED));
+    verify(contentFacet).put(eq("/myorg/mybox/1.0.0/virtualbox/mybox.box"), eq(payload),
+        eq(HashCode.fromString(SHA256_HEX)), eq("myorg"), eq("mybox"), eq("1.0.0"), eq("virtualbox"));
+  }
+
+  @Test
+  public void putReturns400WhenDeclaredChecksumIsMalformed() throws Exception {
+    setTokens(boxFileTokens());
+    when(request.getAction()).thenReturn("PUT");
+    when(request.getPayload()).thenReturn(payload);
+    Headers headers = new Headers();
+    headers.set(VagrantHostedHandler.CHECKSUM_SHA256, "abc");
+    when(request.getHeaders()).thenReturn(headers);
+
+    Response response = underTest.handle(context);
+    assertThat(response.getStatus().getCode(), is(BAD_REQUEST));
+    verify(contentFacet, never()).put(any(), any(Payload.class), any(), any(), any(), any(), any());
+  }
+
   @Test
   public void putReturns400WhenNoPayload() throws Exception {
     Map<String, String> tokens = boxFileTokens();
@@ -174,6 +490,29 @@ public class VagrantHostedHandlerTest
     assertThat(response.getStatus().getCode(), is(NOT_FOUND));
   }
 
+  @Test
+  public void deleteVersionDeletesAllItsBoxFiles() throws Exception {
+    Map<String, String> tokens = metadataTokens();
+    tokens.put("version", "1.0.0");
+    setTokens(tokens);
+    when(request.getAction()).thenReturn("DELETE");
+    when(contentFacet.deleteBox("myorg", "mybox", "1.0.0")).thenReturn(3);
+
+    Response response = underTest.handle(context);
+    assertThat(response.getStatus().getCode(), is(NO_CONTENT));
+    verify(contentFacet, never()).delete(any());
+  }
+
+  @Test
+  public void deleteBoxReturns404WhenNothingDeleted() throws Exception {
+    setTokens(metadataTokens());
+    when(request.getAction()).thenReturn("DELETE");
+    when(contentFacet.deleteBox("myorg", "mybox", null)).thenReturn(0);
+
+    Response response = underTest.handle(context);
+    assertThat(response.getStatus().getCode(), is(NOT_FOUND));
+  }
+
   // -- Unsupported method --
 
   @Test
@@ -186,8 +525,98 @@ public class VagrantHostedHandlerTest
     assertThat(response.getStatus().getCode(), is(METHOD_NOT_ALLOWED));
   }
 
+  // -- Catalog build admission tests --
+
+  @Test
+  public void metadataMissIsRefusedWhenBuildSlotsAndQueueAreFull() throws Exception {
+    setTokens(metadataTokens());
+    when(request.getAction()).thenReturn("GET");
+    stubBoxAsset();
+    assertThat(catalogBuilds.tryAcquire(), is(true));
+
+    Response response = underTest.handle(context);
+
+    assertThat(response.getStatus().getCode(), is(SERVICE_UNAVAILABLE));
+    assertThat(response.getHeaders().get("Retry-After"), is("5"));
+    verify(contentFacet, never()).getCatalog("myorg", "mybox");
+  }
+
+  @Test
+  public void metadataBuildReleasesItsSlot() throws Exception {
+    setTokens(metadataTokens());
+    when(request.getAction()).thenReturn("GET");
+    stubBoxAsset();
+
+    assertThat(underTest.handle(context).getStatus().getCode(), is(OK));
+    assertThat(catalogBuilds.inFlight(), is(0));
+  }
+
+  @Test
+  public void staleCatalogIsServedWhileBuildSlotsAreBusy() throws Exception {
+    when(admissionFacet.serveStaleCatalogs()).thenReturn(true);
+    setTokens(metadataTokens());
+    when(request.getAction()).thenReturn("GET");
+    stubBoxAsset();
+    underTest.handle(context);
+    metadataCache.invalidate("vagrant-local", "myorg", "mybox");
+    assertThat(catalogBuilds.tryAcquire(), is(true));
+
+    Response response = underTest.handle(context);
+
+    assertThat(response.getStatus().getCode(), is(OK));
+    assertThat(((Content) response.getPayload()).getAttributes().get(Content.CONTENT_ETAG, String.class),
+        is(metadataBuilder.etag("http://nexus/repository/vagrant-local", "stamp1")));
+    verify(contentFacet, times(1)).getCatalog("myorg", "mybox");
+  }
+
+  @Test
+  public void staleCatalogIsRebuiltWhenASlotIsFree() throws Exception {
+    when(admissionFacet.serveStaleCatalogs()).thenReturn(true);
+    setTokens(metadataTokens());
+    when(request.getAction()).thenReturn("GET");
+    stubBoxAsset();
+    underTest.handle(context);
+    metadataCache.invalidate("vagrant-local", "myorg", "mybox");
+    when(boxCatalog.stamp()).thenReturn("stamp2");
+
+    Response response = underTest.handle(context);
+
+    assertThat(((Content) response.getPayload()).getAttributes().get(Content.CONTENT_ETAG, String.class),
+        is(metadataBuilder.etag("http://nexus/repository/vagrant-local", "stamp2")));
+    assertThat(catalogBuilds.inFlight(), is(0));
+  }
+
+  @Test
+  public void staleCatalogIsNotServedUnlessEnabled() throws Exception {
+    setTokens(metadataTokens());
+    when(request.getAction()).thenReturn("GET");
+    stubBoxAsset();
+    underTest.handle(context);
+    metadataCache.invalidate("vagrant-local", "myorg", "mybox");
+    assertThat(catalogBuilds.tryAcquire(), is(true));
+
+    assertThat(underTest.handle(context).getStatus().getCode(), is(SERVICE_UNAVAILABLE));
+  }
+
   // -- Helpers --
 
+  private Headers acceptEncoding(final String value) {
+    Headers headers = new Headers();
+    headers.set("Accept-Encoding", value);
+    return headers;
+  }
+
+  private void stubBoxAsset() {
+    when(boxAsset.path()).thenReturn("/myorg/mybox/1.0.0/virtualbox/mybox.box");
+    when(boxAsset.version()).thenReturn("1.0.0");
+    when(boxAsset.provider()).thenReturn("virtualbox");
+    when(boxAsset.sha256()).thenReturn("aaa111");
+    when(boxCatalog.assets()).thenReturn(Collections.singletonList(boxAsset));
+    when(boxCatalog.stamp()).thenReturn("stamp1");
+    when(boxCatalog.lastUpdated()).thenReturn(OffsetDateTime.now());
+    when(contentFacet.getCatalog("myorg", "mybox")).thenReturn(Optional.of(boxCatalog));
+  }
+
   private Map<String, String> boxFileTokens() {
     Map<String, String> tokens = new HashMap<>();
     tokens.put("org", "myorg");
@@ -198,6 +627,19 @@ public class VagrantHostedHandlerTest
     return tokens;
   }
 
+  private Map<String, String> latestTokens(final String provider) {
+    Map<String, String> tokens = metadataTokens();
+    tokens.put("provider", provider);
+    return tokens;
+  }
+
+  private VagrantBoxAsset mockBoxAsset(final String path, final String provider) {
+    VagrantBoxAsset boxAsset = mock(VagrantBoxAsset.class);
+    when(boxAsset.path()).thenReturn(path);
+    when(boxAsset.provider()).thenReturn(provider);
+    return boxAsset;
+  }
+
   private Map<String, String> metadataTokens() {
     Map<String, String> tokens = new HashMap<>();
     tokens.put("org", "myorg");
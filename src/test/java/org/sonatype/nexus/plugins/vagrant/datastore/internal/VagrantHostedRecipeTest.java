@@ -39,6 +39,7 @@ public class VagrantHostedRecipeTest
   @Mock private BrowseFacet browseFacet;
   @Mock private SearchFacet searchFacet;
   @Mock private ContentMaintenanceFacet maintenanceFacet;
+  @Mock private VagrantAdmissionFacet admissionFacet;
   @Mock private TimingHandler timingHandler;
   @Mock private SecurityHandler securityHandler;
   @Mock private ExceptionHandler exceptionHandler;
@@ -48,6 +49,10 @@ public class VagrantHostedRecipeTest
   @Mock private ContentHeadersHandler contentHeadersHandler;
   @Mock private LastDownloadedHandler lastDownloadedHandler;
   @Mock private VagrantHostedHandler hostedHandler;
+  @Mock private VagrantUploadHandler uploadHandler;
+  @Mock private VagrantUploadAdmissionHandler uploadAdmissionHandler;
+  @Mock private VagrantUnchangedBoxHandler unchangedBoxHandler;
+  @Mock private VagrantConditionsHandler conditionsHandler;
 
   private VagrantHostedRecipe underTest;
 
@@ -61,6 +66,7 @@ public class VagrantHostedRecipeTest
     underTest.browseFacet = () -> browseFacet;
     underTest.searchFacet = () -> searchFacet;
     underTest.maintenanceFacet = () -> maintenanceFacet;
+    underTest.admissionFacet = () -> admissionFacet;
     underTest.timingHandler = timingHandler;
     underTest.securityHandler = securityHandler;
     underTest.exceptionHandler = exceptionHandler;
@@ -70,6 +76,10 @@ public class VagrantHostedRecipeTest
     underTest.contentHeadersHandler = contentHeadersHandler;
     underTest.lastDownloadedHandler = lastDownloadedHandler;
     underTest.hostedHandler = hostedHandler;
+    underTest.uploadHandler = uploadHandler;
+    underTest.uploadAdmissionHandler = uploadAdmissionHandler;
+    underTest.unchangedBoxHandler = unchangedBoxHandler;
+    underTest.conditionsHandler = conditionsHandler;
   }
 
   @Test
@@ -95,6 +105,12 @@ public class VagrantHostedRecipeTest
     verify(repository).attach(searchFacet);
   }
 
+  @Test
+  public void applyAttachesAdmissionFacet() throws Exception {
+    underTest.apply(repository);
+    verify(repository).attach(admissionFacet);
+  }
+
   @Test
   public void applyAttachesViewFacet() throws Exception {
     underTest.apply(repository);
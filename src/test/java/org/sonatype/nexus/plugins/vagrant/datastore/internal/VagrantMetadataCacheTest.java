@@ -0,0 +1,273 @@
+package org.sonatype.nexus.plugins.vagrant.datastore.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+
+import com.google.common.base.Ticker;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.google.common.util.concurrent.Uninterruptibles.awaitUninterruptibly;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class VagrantMetadataCacheTest
+    extends TestSupport
+{
+  private static final String BASE_URL = "http://nexus/repository/vagrant-local";
+
+  private static final VagrantCatalog CATALOG =
+      new VagrantCatalog(BASE_URL, "{\"name\":\"myorg/mybox\"}".getBytes(), "etag", DateTime.now());
+
+  private static final long EXPIRE_AFTER_WRITE_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+  private final AtomicLong now = new AtomicLong();
+
+  private final Ticker ticker = new Ticker()
+  {
+    @Override
+    public long read() {
+      return now.get();
+    }
+  };
+
+  private VagrantMetadataCache underTest;
+
+  @Before
+  public void setUp() {
+    underTest = new VagrantMetadataCache(1024, EXPIRE_AFTER_WRITE_NANOS, ticker);
+  }
+
+  @Test
+  public void returnsCachedCatalog() {
+    underTest.put("vagrant-local", "myorg", "mybox", CATALOG, underTest.generation("vagrant-local", "myorg", "mybox"));
+    assertThat(underTest.get("vagrant-local", "myorg", "mybox", BASE_URL), is(CATALOG));
+  }
+
+  @Test
+  public void missesOnDifferentBaseUrl() {
+    underTest.put("vagrant-local", "myorg", "mybox", CATALOG, underTest.generation("vagrant-local", "myorg", "mybox"));
+    assertThat(underTest.get("vagrant-local", "myorg", "mybox", "https://other/repository/vagrant-local"),
+        is(nullValue()));
+  }
+
+  @Test
+  public void invalidateRemovesEntry() {
+    underTest.put("vagrant-local", "myorg", "mybox", CATALOG, underTest.generation("vagrant-local", "myorg", "mybox"));
+    underTest.invalidate("vagrant-local", "myorg", "mybox");
+    assertThat(underTest.get("vagrant-local", "myorg", "mybox", BASE_URL), is(nullValue()));
+  }
+
+  @Test
+  public void invalidateKeepsStaleEntry() {
+    underTest.put("vagrant-local", "myorg", "mybox", CATALOG, underTest.generation("vagrant-local", "myorg", "mybox"));
+    underTest.invalidate("vagrant-local", "myorg", "mybox");
+    assertThat(underTest.getStale("vagrant-local", "myorg", "mybox", BASE_URL), is(CATALOG));
+    assertThat(underTest.getStale("vagrant-local", "myorg", "mybox", "https://other/repository/vagrant-local"),
+        is(nullValue()));
+  }
+
+  @Test
+  public void rebuildReplacesStaleEntry() throws Exception {
+    VagrantCatalog fresh = new VagrantCatalog(BASE_URL, "{}".getBytes(), "fresh", DateTime.now());
+    underTest.put("vagrant-local", "myorg", "mybox", CATALOG, underTest.generation("vagrant-local", "myorg", "mybox"));
+    underTest.invalidate("vagrant-local", "myorg", "mybox");
+    assertThat(underTest.load("vagrant-local", "myorg", "mybox", BASE_URL, () -> fresh), is(fresh));
+    assertThat(underTest.getStale("vagrant-local", "myorg", "mybox", BASE_URL), is(fresh));
+  }
+
+  @Test
+  public void staleEntryDroppedWhenBoxIsGone() throws Exception {
+    underTest.put("vagrant-local", "myorg", "mybox", CATALOG, underTest.generation("vagrant-local", "myorg", "mybox"));
+    underTest.invalidate("vagrant-local", "myorg", "mybox");
+    assertThat(underTest.load("vagrant-local", "myorg", "mybox", BASE_URL, () -> null), is(nullValue()));
+    assertThat(underTest.getStale("vagrant-local", "myorg", "mybox", BASE_URL), is(nullValue()));
+  }
+
+  @Test
+  public void removeDropsStaleEntry() {
+    underTest.put("vagrant-local", "myorg", "mybox", CATALOG, underTest.generation("vagrant-local", "myorg", "mybox"));
+    underTest.invalidate("vagrant-local", "myorg", "mybox");
+    underTest.remove("vagrant-local", "myorg", "mybox");
+    assertThat(underTest.getStale("vagrant-local", "myorg", "mybox", BASE_URL), is(nullValue()));
+  }
+
+  @Test
+  public void isBuildingWhileLoadRuns() throws Exception {
+    CountDownLatch building = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<VagrantCatalog> load = executor.submit(() -> underTest.load("vagrant-local", "myorg", "mybox", BASE_URL,
+          () -> {
+            building.countDown();
+            awaitUninterruptibly(release);
+            return CATALOG;
+          }));
+      building.await(5, TimeUnit.SECONDS);
+      assertThat(underTest.isBuilding("vagrant-local", "myorg", "mybox"), is(true));
+
+      release.countDown();
+      load.get(5, TimeUnit.SECONDS);
+      assertThat(underTest.isBuilding("vagrant-local", "myorg", "mybox"), is(false));
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void buildRacingWithInvalidationIsNotCached() {
+    long generation = underTest.generation("vagrant-local", "myorg", "mybox");
+    underTest.invalidate("vagrant-local", "myorg", "mybox");
+    underTest.put("vagrant-local", "myorg", "mybox", CATALOG, generation);
+    assertThat(underTest.get("vagrant-local", "myorg", "mybox", BASE_URL), is(nullValue()));
+  }
+
+  @Test
+  public void invalidationOfAnotherBoxDoesNotDropBuild() {
+    long generation = underTest.generation("vagrant-local", "myorg", "mybox");
+    underTest.invalidate("vagrant-local", "myorg", "otherbox");
+    underTest.put("vagrant-local", "myorg", "mybox", CATALOG, generation);
+    assertThat(underTest.get("vagrant-local", "myorg", "mybox", BASE_URL), is(CATALOG));
+  }
+
+  @Test
+  public void expiredEntryIsOnlyServedStale() throws Exception {
+    underTest.put("vagrant-local", "myorg", "mybox", CATALOG, underTest.generation("vagrant-local", "myorg", "mybox"));
+    now.addAndGet(EXPIRE_AFTER_WRITE_NANOS - 1);
+    assertThat(underTest.get("vagrant-local", "myorg", "mybox", BASE_URL), is(CATALOG));
+
+    now.incrementAndGet();
+    assertThat(underTest.get("vagrant-local", "myorg", "mybox", BASE_URL), is(nullValue()));
+    assertThat(underTest.getStale("vagrant-local", "myorg", "mybox", BASE_URL), is(CATALOG));
+
+    VagrantCatalog fresh = new VagrantCatalog(BASE_URL, "{}".getBytes(), "fresh", DateTime.now());
+    assertThat(underTest.load("vagrant-local", "myorg", "mybox", BASE_URL, () -> fresh), is(fresh));
+    assertThat(underTest.get("vagrant-local", "myorg", "mybox", BASE_URL), is(fresh));
+  }
+
+  @Test
+  public void invalidateRepositoryMarksOnlyThatRepositoryStale() {
+    underTest.put("vagrant-local", "myorg", "mybox", CATALOG, underTest.generation("vagrant-local", "myorg", "mybox"));
+    underTest.put("vagrant-other", "myorg", "mybox", CATALOG, underTest.generation("vagrant-other", "myorg", "mybox"));
+    underTest.invalidateRepository("vagrant-local");
+    assertThat(underTest.get("vagrant-local", "myorg", "mybox", BASE_URL), is(nullValue()));
+    assertThat(underTest.getStale("vagrant-local", "myorg", "mybox", BASE_URL), is(CATALOG));
+    assertThat(underTest.get("vagrant-other", "myorg", "mybox", BASE_URL), is(CATALOG));
+  }
+
+  @Test
+  public void removeRepositoryDropsOnlyThatRepository() {
+    underTest.put("vagrant-local", "myorg", "mybox", CATALOG, underTest.generation("vagrant-local", "myorg", "mybox"));
+    underTest.put("vagrant-other", "myorg", "mybox", CATALOG, underTest.generation("vagrant-other", "myorg", "mybox"));
+    underTest.removeRepository("vagrant-local");
+    assertThat(underTest.getStale("vagrant-local", "myorg", "mybox", BASE_URL), is(nullValue()));
+    assertThat(underTest.get("vagrant-other", "myorg", "mybox", BASE_URL), is(CATALOG));
+  }
+
+  @Test
+  public void evictsWhenByteBudgetExceeded() {
+    // each entry weighs 20 plain + 23 gzip bytes
+    underTest = new VagrantMetadataCache(60, EXPIRE_AFTER_WRITE_NANOS, ticker);
+    VagrantCatalog large = new VagrantCatalog(BASE_URL, new byte[20], "etag", DateTime.now());
+    underTest.put("vagrant-local", "myorg", "box1", large, underTest.generation("vagrant-local", "myorg", "box1"));
+    underTest.put("vagrant-local", "myorg", "box2", large, underTest.generation("vagrant-local", "myorg", "box2"));
+    assertThat(underTest.get("vagrant-local", "myorg", "box1", BASE_URL), is(nullValue()));
+    assertThat(underTest.get("vagrant-local", "myorg", "box2", BASE_URL), is(large));
+  }
+
+  @Test
+  public void loadCachesBuiltCatalog() throws Exception {
+    AtomicInteger builds = new AtomicInteger();
+    VagrantMetadataCache.CatalogLoader loader = () -> {
+      builds.incrementAndGet();
+      return CATALOG;
+    };
+
+    assertThat(underTest.load("vagrant-local", "myorg", "mybox", BASE_URL, loader), is(CATALOG));
+    assertThat(underTest.load("vagrant-local", "myorg", "mybox", BASE_URL, loader), is(CATALOG));
+    assertThat(builds.get(), is(1));
+  }
+
+  @Test
+  public void loadDoesNotCacheMissingCatalog() throws Exception {
+    assertThat(underTest.load("vagrant-local", "myorg", "mybox", BASE_URL, () -> null), is(nullValue()));
+    assertThat(underTest.load("vagrant-local", "myorg", "mybox", BASE_URL, () -> CATALOG), is(CATALOG));
+  }
+
+  @Test
+  public void concurrentLoadsShareOneBuild() throws Exception {
+    CountDownLatch building = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger builds = new AtomicInteger();
+    VagrantMetadataCache.CatalogLoader loader = () -> {
+      builds.incrementAndGet();
+      building.countDown();
+      awaitUninterruptibly(release);
+      return CATALOG;
+    };
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      Future<VagrantCatalog> first =
+          executor.submit(() -> underTest.load("vagrant-local", "myorg", "mybox", BASE_URL, loader));
+      building.await(5, TimeUnit.SECONDS);
+
+      List<Future<VagrantCatalog>> waiters = new ArrayList<>();
+      for (int i = 0; i < 3; i++) {
+        waiters.add(executor.submit(() -> underTest.load("vagrant-local", "myorg", "mybox", BASE_URL, loader)));
+      }
+      release.countDown();
+
+      assertThat(first.get(5, TimeUnit.SECONDS), is(CATALOG));
+      for (Future<VagrantCatalog> waiter : waiters) {
+        assertThat(waiter.get(5, TimeUnit.SECONDS), is(CATALOG));
+      }
+      assertThat(builds.get(), is(1));
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void loadAfterInvalidationDoesNotJoinStaleBuild() throws Exception {
+    CountDownLatch building = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    VagrantCatalog fresh = new VagrantCatalog(BASE_URL, "{}".getBytes(), "fresh", DateTime.now());
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      VagrantMetadataCache.CatalogLoader staleLoader = () -> {
+        building.countDown();
+        awaitUninterruptibly(release);
+        return CATALOG;
+      };
+      Future<VagrantCatalog> stale =
+          executor.submit(() -> underTest.load("vagrant-local", "myorg", "mybox", BASE_URL, staleLoader));
+      building.await(5, TimeUnit.SECONDS);
+
+      underTest.invalidate("vagrant-local", "myorg", "mybox");
+      assertThat(underTest.load("vagrant-local", "myorg", "mybox", BASE_URL, () -> fresh), is(fresh));
+
+      release.countDown();
+      assertThat(stale.get(5, TimeUnit.SECONDS), is(CATALOG));
+      assertThat(underTest.get("vagrant-local", "myorg", "mybox", BASE_URL), is(fresh));
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+}
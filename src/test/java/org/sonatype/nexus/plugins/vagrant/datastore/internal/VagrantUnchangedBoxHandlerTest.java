@@ -0,0 +1,152 @@
+package org.sonatype.nexus.plugins.vagrant.datastore.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+import org.sonatype.nexus.common.collect.AttributesMap;
+import org.sonatype.nexus.plugins.vagrant.datastore.VagrantContentFacet;
+import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.view.Content;
+import org.sonatype.nexus.repository.view.Context;
+import org.sonatype.nexus.repository.view.Headers;
+import org.sonatype.nexus.repository.view.Parameters;
+import org.sonatype.nexus.repository.view.Payload;
+import org.sonatype.nexus.repository.view.Request;
+import org.sonatype.nexus.repository.view.Response;
+import org.sonatype.nexus.repository.view.matchers.token.TokenMatcher;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.sonatype.nexus.repository.http.HttpStatus.*;
+
+public class VagrantUnchangedBoxHandlerTest
+    extends TestSupport
+{
+  private static final String PATH = "/myorg/mybox/1.0.0/virtualbox/mybox.box";
+
+  private static final String SHA256_HEX = "2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824";
+
+  @Mock private Context context;
+  @Mock private Request request;
+  @Mock private Repository repository;
+  @Mock private VagrantContentFacet contentFacet;
+  @Mock private Payload payload;
+  @Mock private TokenMatcher.State tokenState;
+  @Mock private Response proceeded;
+
+  private Headers headers;
+
+  private Parameters parameters;
+
+  private VagrantUnchangedBoxHandler underTest;
+
+  @Before
+  public void setUp() throws Exception {
+    headers = new Headers();
+    parameters = new Parameters();
+    when(context.getRequest()).thenReturn(request);
+    when(context.getRepository()).thenReturn(repository);
+    when(context.getAttributes()).thenReturn(new AttributesMap());
+    when(context.proceed()).thenReturn(proceeded);
+    context.getAttributes().set(TokenMatcher.State.class, tokenState);
+    when(tokenState.getTokens()).thenReturn(boxFileTokens());
+    when(request.getAction()).thenReturn("PUT");
+    when(request.getPayload()).thenReturn(payload);
+    when(request.getHeaders()).thenReturn(headers);
+    when(request.getParameters()).thenReturn(parameters);
+    when(repository.facet(VagrantContentFacet.class)).thenReturn(contentFacet);
+    underTest = new VagrantUnchangedBoxHandler();
+  }
+
+  @Test
+  public void storedChecksumInIfNoneMatchSkipsUpload() throws Exception {
+    headers.set("If-None-Match", "\"" + SHA256_HEX + "\"");
+    stubStoredBox(SHA256_HEX);
+
+    Response response = underTest.handle(context);
+
+    assertThat(response.getStatus().getCode(), is(NOT_MODIFIED));
+    verify(payload, never()).openInputStream();
+    verify(context, never()).proceed();
+  }
+
+  @Test
+  public void storedDeclaredChecksumSkipsUpload() throws Exception {
+    headers.set(VagrantHostedHandler.CHECKSUM_SHA256, SHA256_HEX);
+    stubStoredBox(SHA256_HEX);
+
+    Response response = underTest.handle(context);
+
+    assertThat(response.getStatus().getCode(), is(OK));
+    verify(context, never()).proceed();
+  }
+
+  @Test
+  public void wildcardIfNoneMatchOverStoredBoxFails() throws Exception {
+    headers.set("If-None-Match", "*");
+    stubStoredBox("0000");
+
+    Response response = underTest.handle(context);
+
+    assertThat(response.getStatus().getCode(), is(PRECONDITION_FAILED));
+    verify(payload, never()).openInputStream();
+    verify(context, never()).proceed();
+  }
+
+  @Test
+  public void wildcardIfNoneMatchCreatesNewBox() throws Exception {
+    headers.set("If-None-Match", "*");
+
+    assertThat(underTest.handle(context), is(proceeded));
+  }
+
+  @Test
+  public void otherChecksumInIfNoneMatchUploads() throws Exception {
+    headers.set("If-None-Match", "\"" + SHA256_HEX + "\"");
+    stubStoredBox("0000");
+
+    assertThat(underTest.handle(context), is(proceeded));
+  }
+
+  @Test
+  public void unconditionalPutProceedsWithoutLookup() throws Exception {
+    assertThat(underTest.handle(context), is(proceeded));
+    verify(contentFacet, never()).head(any());
+  }
+
+  @Test
+  public void chunkOfResumableUploadProceeds() throws Exception {
+    parameters.set(VagrantUploadHandler.UPLOAD_ID, "upload-1");
+    headers.set("If-None-Match", "*");
+    stubStoredBox(SHA256_HEX);
+
+    assertThat(underTest.handle(context), is(proceeded));
+    verify(contentFacet, never()).head(any());
+  }
+
+  private void stubStoredBox(final String sha256) {
+    Content stored = new Content(payload);
+    stored.getAttributes().set(Content.CONTENT_ETAG, sha256);
+    when(contentFacet.head(PATH)).thenReturn(Optional.of(stored));
+  }
+
+  private static Map<String, String> boxFileTokens() {
+    Map<String, String> tokens = new HashMap<>();
+    tokens.put("org", "myorg");
+    tokens.put("name", "mybox");
+    tokens.put("version", "1.0.0");
+    tokens.put("provider", "virtualbox");
+    tokens.put("filename", "mybox");
+    return tokens;
+  }
+}
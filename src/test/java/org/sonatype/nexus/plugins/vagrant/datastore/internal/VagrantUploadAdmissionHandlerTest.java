@@ -0,0 +1,74 @@
+package org.sonatype.nexus.plugins.vagrant.datastore.internal;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.view.Context;
+import org.sonatype.nexus.repository.view.Response;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.sonatype.nexus.repository.http.HttpStatus.SERVICE_UNAVAILABLE;
+
+public class VagrantUploadAdmissionHandlerTest
+    extends TestSupport
+{
+  @Mock private Context context;
+  @Mock private Repository repository;
+  @Mock private VagrantAdmissionFacet admissionFacet;
+  @Mock private Response proceeded;
+
+  private VagrantAdmissionLimiter uploads;
+
+  private VagrantUploadAdmissionHandler underTest;
+
+  @Before
+  public void setUp() {
+    uploads = new VagrantAdmissionLimiter(1, 0, 0);
+    when(context.getRepository()).thenReturn(repository);
+    when(repository.facet(VagrantAdmissionFacet.class)).thenReturn(admissionFacet);
+    when(admissionFacet.uploads()).thenReturn(uploads);
+    underTest = new VagrantUploadAdmissionHandler();
+  }
+
+  @Test
+  public void admittedUploadProceedsAndReleases() throws Exception {
+    when(context.proceed()).thenReturn(proceeded);
+
+    assertThat(underTest.handle(context), is(proceeded));
+    assertThat(uploads.inFlight(), is(0));
+  }
+
+  @Test
+  public void uploadBeyondQueueIsRefusedWithRetryAfter() throws Exception {
+    uploads.acquire();
+
+    Response response = underTest.handle(context);
+
+    assertThat(response.getStatus().getCode(), is(SERVICE_UNAVAILABLE));
+    assertThat(response.getHeaders().get("Retry-After"),
+        is(Integer.toString(VagrantUploadAdmissionHandler.RETRY_AFTER_SECONDS)));
+    assertThat(response.getHeaders().get(VagrantUploadAdmissionHandler.UPLOADS_IN_FLIGHT), is("1"));
+    assertThat(response.getHeaders().get(VagrantUploadAdmissionHandler.UPLOADS_QUEUED), is("0"));
+    verify(context, never()).proceed();
+  }
+
+  @Test
+  public void uploadWaitingLongerThanQueueTimeoutIsRefused() throws Exception {
+    uploads = new VagrantAdmissionLimiter(1, 1, 50);
+    when(admissionFacet.uploads()).thenReturn(uploads);
+    uploads.acquire();
+
+    Response response = underTest.handle(context);
+
+    assertThat(response.getStatus().getCode(), is(SERVICE_UNAVAILABLE));
+    assertThat(response.getHeaders().get(VagrantUploadAdmissionHandler.UPLOADS_QUEUED), is("0"));
+    verify(context, never()).proceed();
+  }
+}
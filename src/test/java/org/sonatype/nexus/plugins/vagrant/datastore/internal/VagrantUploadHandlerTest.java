@@ -0,0 +1,460 @@
+package org.sonatype.nexus.plugins.vagrant.datastore.internal;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+import org.sonatype.nexus.common.collect.AttributesMap;
+import org.sonatype.nexus.common.hash.HashAlgorithm;
+import org.sonatype.nexus.plugins.vagrant.datastore.VagrantContentFacet;
+import org.sonatype.nexus.plugins.vagrant.datastore.VagrantStagedBox;
+import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.security.SecurityFacet;
+import org.sonatype.nexus.repository.view.Content;
+import org.sonatype.nexus.repository.view.Context;
+import org.sonatype.nexus.repository.view.Headers;
+import org.sonatype.nexus.repository.view.Parameters;
+import org.sonatype.nexus.repository.view.Request;
+import org.sonatype.nexus.repository.view.Response;
+import org.sonatype.nexus.repository.view.matchers.token.TokenMatcher;
+import org.sonatype.nexus.repository.view.payloads.BytesPayload;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import org.apache.shiro.authz.AuthorizationException;
+import org.apache.shiro.subject.Subject;
+import org.apache.shiro.util.ThreadContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.sonatype.nexus.common.hash.HashAlgorithm.SHA256;
+import static org.sonatype.nexus.repository.http.HttpStatus.*;
+
+public class VagrantUploadHandlerTest
+    extends TestSupport
+{
+  private static final String PATH = "/myorg/mybox/1.0.0/virtualbox/mybox.box";
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Mock private Context context;
+  @Mock private Request request;
+  @Mock private Repository repository;
+  @Mock private VagrantContentFacet contentFacet;
+  @Mock private TokenMatcher.State tokenState;
+  @Mock private SecurityFacet securityFacet;
+  @Mock private Subject subject;
+
+  private Parameters parameters;
+
+  private Headers headers;
+
+  private VagrantUploadHandler underTest;
+
+  @Before
+  public void setUp() throws Exception {
+    underTest = new VagrantUploadHandler(
+        new VagrantUploadManager(temporaryFolder.newFolder().toPath(), 60_000L),
+        new VagrantMetadataCache(1024 * 1024, 60));
+
+    parameters = new Parameters();
+    headers = new Headers();
+    when(context.getRequest()).thenReturn(request);
+    when(request.getParameters()).thenReturn(parameters);
+    when(request.getHeaders()).thenReturn(headers);
+    when(context.getRepository()).thenReturn(repository);
+    when(repository.facet(VagrantContentFacet.class)).thenReturn(contentFacet);
+    when(repository.getName()).thenReturn("vagrant-local");
+    when(repository.getUrl()).thenReturn("http://nexus/repository/vagrant-local");
+    when(context.getAttributes()).thenReturn(new AttributesMap());
+    context.getAttributes().set(TokenMatcher.State.class, tokenState);
+    when(tokenState.getTokens()).thenReturn(boxFileTokens());
+    when(repository.facet(SecurityFacet.class)).thenReturn(securityFacet);
+
+    when(subject.getPrincipal()).thenReturn("alice");
+    ThreadContext.bind(subject);
+  }
+
+  @After
+  public void tearDown() {
+    ThreadContext.unbindSubject();
+  }
+
+  @Test
+  public void postStartsUpload() throws Exception {
+    Response response = start();
+
+    assertThat(response.getStatus().getCode(), is(CREATED));
+    assertThat(response.getHeaders().get("Location"),
+        startsWith("http://nexus/repository/vagrant-local" + PATH + "?uploadId="));
+    assertThat(response.getHeaders().get(VagrantUploadHandler.UPLOAD_OFFSET), is("0"));
+  }
+
+  @Test
+  public void chunksAreCommittedWithIncrementalHashes() throws Exception {
+    parameters.set(VagrantUploadHandler.UPLOAD_ID, uploadId(start()));
+
+    assertThat(chunk("bytes 0-4/11", "hello").getStatus().getCode(), is(NO_CONTENT));
+    assertThat(chunk("bytes 5-10/11", " world").getHeaders().get(VagrantUploadHandler.UPLOAD_OFFSET), is("11"));
+
+    when(request.getAction()).thenReturn("HEAD");
+    assertThat(underTest.handle(context).getHeaders().get(VagrantUploadHandler.UPLOAD_OFFSET), is("11"));
+
+    when(request.getAction()).thenReturn("POST");
+    assertThat(underTest.handle(context).getStatus().getCode(), is(CREATED));
+
+    @SuppressWarnings("unchecked")
+    ArgumentCaptor<Map<HashAlgorithm, HashCode>> hashes = ArgumentCaptor.forClass(Map.class);
+    verify(contentFacet).put(eq(PATH), any(Path.class), hashes.capture(),
+        eq("myorg"), eq("mybox"), eq("1.0.0"), eq("virtualbox"));
+    assertThat(hashes.getValue().get(SHA256), is(Hashing.sha256().hashString("hello world", StandardCharsets.UTF_8)));
+  }
+
+  @Test
+  public void chunkNotAtCurrentOffsetIsRefused() throws Exception {
+    parameters.set(VagrantUploadHandler.UPLOAD_ID, uploadId(start()));
+
+    Response response = chunk("bytes 5-10/11", " world");
+
+    assertThat(response.getStatus().getCode(), is(CONFLICT));
+    assertThat(response.getHeaders().get(VagrantUploadHandler.UPLOAD_OFFSET), is("0"));
+  }
+
+  @Test
+  public void chunkShorterThanItsRangeIsKeptAndAnswered409() throws Exception {
+    parameters.set(VagrantUploadHandler.UPLOAD_ID, uploadId(start()));
+
+    Response response = chunk("bytes 0-10/11", "hello");
+
+    assertThat(response.getStatus().getCode(), is(CONFLICT));
+    assertThat(response.getHeaders().get(VagrantUploadHandler.UPLOAD_OFFSET), is("5"));
+    assertThat(chunk("bytes 5-10/11", " world").getStatus().getCode(), is(NO_CONTENT));
+  }
+
+  @Test
+  public void incompleteUploadIsNotCommitted() throws Exception {
+    parameters.set(VagrantUploadHandler.UPLOAD_ID, uploadId(start()));
+    chunk("bytes 0-4/11", "hello");
+
+    when(request.getAction()).thenReturn("POST");
+    Response response = underTest.handle(context);
+
+    assertThat(response.getStatus().getCode(), is(CONFLICT));
+    verify(contentFacet, never()).put(any(), any(Path.class), any(), any(), any(), any(), any());
+  }
+
+  @Test
+  public void emptyUploadIsNotCommitted() throws Exception {
+    parameters.set(VagrantUploadHandler.UPLOAD_ID, uploadId(start()));
+
+    when(request.getAction()).thenReturn("POST");
+    Response response = underTest.handle(context);
+
+    assertThat(response.getStatus().getCode(), is(CONFLICT));
+    verify(contentFacet, never()).put(any(), any(Path.class), any(), any(), any(), any(), any());
+  }
+
+  @Test
+  public void commitOverStoredBoxNeedsPermissionToReplaceIt() throws Exception {
+    parameters.set(VagrantUploadHandler.UPLOAD_ID, uploadId(start()));
+    chunk("bytes 0-4/5", "hello");
+    when(contentFacet.head(PATH)).thenReturn(Optional.of(mock(Content.class)));
+    doThrow(new AuthorizationException("no edit")).when(securityFacet).ensurePermitted(any());
+
+    when(request.getAction()).thenReturn("POST");
+    try {
+      underTest.handle(context);
+    }
+    catch (AuthorizationException expected) {
+      // refused before anything was stored
+    }
+
+    ArgumentCaptor<Request> checked = ArgumentCaptor.forClass(Request.class);
+    verify(securityFacet).ensurePermitted(checked.capture());
+    assertThat(checked.getValue().getAction(), is("PUT"));
+    assertThat(checked.getValue().getPath(), is(PATH));
+    verify(contentFacet, never()).put(any(), any(Path.class), any(), any(), any(), any(), any());
+  }
+
+  @Test
+  public void commitOfNewBoxNeedsNoFurtherPermission() throws Exception {
+    parameters.set(VagrantUploadHandler.UPLOAD_ID, uploadId(start()));
+    chunk("bytes 0-4/5", "hello");
+
+    when(request.getAction()).thenReturn("POST");
+    assertThat(underTest.handle(context).getStatus().getCode(), is(CREATED));
+
+    verify(securityFacet, never()).ensurePermitted(any());
+  }
+
+  @Test
+  public void uploadIsUnknownToOtherUsers() throws Exception {
+    parameters.set(VagrantUploadHandler.UPLOAD_ID, uploadId(start()));
+    chunk("bytes 0-4/5", "hello");
+    when(subject.getPrincipal()).thenReturn("mallory");
+
+    for (String method : asList("HEAD", "PUT", "POST", "DELETE")) {
+      when(request.getAction()).thenReturn(method);
+      assertThat(method, underTest.handle(context).getStatus().getCode(), is(NOT_FOUND));
+    }
+    verify(contentFacet, never()).put(any(), any(Path.class), any(), any(), any(), any(), any());
+
+    when(subject.getPrincipal()).thenReturn("alice");
+    when(request.getAction()).thenReturn("HEAD");
+    assertThat(underTest.handle(context).getHeaders().get(VagrantUploadHandler.UPLOAD_OFFSET), is("5"));
+  }
+
+  @Test
+  public void commitWithWrongDeclaredChecksumIsRefused() throws Exception {
+    parameters.set(VagrantUploadHandler.UPLOAD_ID, uploadId(start()));
+    chunk("bytes 0-4/5", "hello");
+    headers.set(VagrantHostedHandler.CHECKSUM_SHA256,
+        Hashing.sha256().hashString("world", StandardCharsets.UTF_8).toString());
+
+    when(request.getAction()).thenReturn("POST");
+    Response response = underTest.handle(context);
+
+    assertThat(response.getStatus().getCode(), is(BAD_REQUEST));
+    verify(contentFacet, never()).put(any(), any(Path.class), any(), any(), any(), any(), any());
+  }
+
+  @Test
+  public void startDeclaringPartsEchoesLength() throws Exception {
+    Response response = start(11, 4);
+
+    assertThat(response.getStatus().getCode(), is(CREATED));
+    assertThat(response.getHeaders().get(VagrantUploadHandler.UPLOAD_LENGTH), is("11"));
+  }
+
+  @Test
+  public void startWithInvalidPartsIsRefused() throws Exception {
+    assertThat(start(0, 4).getStatus().getCode(), is(BAD_REQUEST));
+    assertThat(start(11, 0).getStatus().getCode(), is(BAD_REQUEST));
+    assertThat(start(10_001, 1).getStatus().getCode(), is(BAD_REQUEST));
+
+    headers.set(VagrantUploadHandler.UPLOAD_PART_SIZE, "4");
+    assertThat(start().getStatus().getCode(), is(BAD_REQUEST));
+  }
+
+  @Test
+  public void partsOutOfOrderAreAssembledInOrder() throws Exception {
+    parameters.set(VagrantUploadHandler.UPLOAD_ID, uploadId(start(11, 4)));
+
+    assertThat(part(2, "o wo").getHeaders().get(VagrantUploadHandler.UPLOAD_OFFSET), is("0"));
+    assertThat(part(3, "rld").getHeaders().get(VagrantUploadHandler.UPLOAD_OFFSET), is("0"));
+    Response response = part(1, "hell");
+    assertThat(response.getStatus().getCode(), is(NO_CONTENT));
+    assertThat(response.getHeaders().get(VagrantUploadHandler.UPLOAD_OFFSET), is("11"));
+
+    when(request.getAction()).thenReturn("POST");
+    assertThat(underTest.handle(context).getStatus().getCode(), is(CREATED));
+
+    @SuppressWarnings("unchecked")
+    ArgumentCaptor<Map<HashAlgorithm, HashCode>> hashes = ArgumentCaptor.forClass(Map.class);
+    verify(contentFacet).put(eq(PATH), any(Path.class), hashes.capture(),
+        eq("myorg"), eq("mybox"), eq("1.0.0"), eq("virtualbox"));
+    assertThat(hashes.getValue().get(SHA256), is(Hashing.sha256().hashString("hello world", StandardCharsets.UTF_8)));
+  }
+
+  @Test
+  public void uploadWithMissingPartIsNotCommitted() throws Exception {
+    parameters.set(VagrantUploadHandler.UPLOAD_ID, uploadId(start(11, 4)));
+    part(1, "hell");
+    part(3, "rld");
+
+    when(request.getAction()).thenReturn("POST");
+    Response response = underTest.handle(context);
+
+    assertThat(response.getStatus().getCode(), is(CONFLICT));
+    verify(contentFacet, never()).put(any(), any(Path.class), any(), any(), any(), any(), any());
+  }
+
+  @Test
+  public void assembledPartCannotBeSentAgain() throws Exception {
+    parameters.set(VagrantUploadHandler.UPLOAD_ID, uploadId(start(11, 5)));
+    part(1, "hello");
+
+    Response response = part(1, "HELLO");
+
+    assertThat(response.getStatus().getCode(), is(CONFLICT));
+    assertThat(response.getHeaders().get(VagrantUploadHandler.UPLOAD_OFFSET), is("5"));
+  }
+
+  @Test
+  public void partsAndChunksDoNotMix() throws Exception {
+    parameters.set(VagrantUploadHandler.UPLOAD_ID, uploadId(start(11, 5)));
+    chunk("bytes 0-4/11", "hello");
+
+    assertThat(part(2, " worl").getStatus().getCode(), is(CONFLICT));
+  }
+
+  @Test
+  public void partsNeedDeclaredSizes() throws Exception {
+    parameters.set(VagrantUploadHandler.UPLOAD_ID, uploadId(start()));
+
+    assertThat(part(1, "hello").getStatus().getCode(), is(BAD_REQUEST));
+  }
+
+  @Test
+  public void partBeyondDeclaredCountIsRefused() throws Exception {
+    parameters.set(VagrantUploadHandler.UPLOAD_ID, uploadId(start(11, 4)));
+
+    assertThat(part(4, "x").getStatus().getCode(), is(BAD_REQUEST));
+  }
+
+  @Test
+  public void partOfWrongSizeIsRefused() throws Exception {
+    parameters.set(VagrantUploadHandler.UPLOAD_ID, uploadId(start(11, 4)));
+
+    Response response = part(1, "hello");
+
+    assertThat(response.getStatus().getCode(), is(CONFLICT));
+    assertThat(response.getHeaders().get(VagrantUploadHandler.UPLOAD_OFFSET), is("0"));
+    assertThat(part(1, "hell").getStatus().getCode(), is(NO_CONTENT));
+  }
+
+  @Test
+  public void publishCommitsUploadsOfVersionTogether() throws Exception {
+    String virtualbox = uploadedBox("virtualbox");
+    String libvirt = uploadedBox("libvirt");
+
+    Response response = publish("1.0.0", virtualbox, libvirt);
+
+    assertThat(response.getStatus().getCode(), is(CREATED));
+    @SuppressWarnings("unchecked")
+    ArgumentCaptor<List<VagrantStagedBox>> boxes = ArgumentCaptor.forClass(List.class);
+    verify(contentFacet).putVersion(eq("myorg"), eq("mybox"), eq("1.0.0"), boxes.capture());
+    assertThat(boxes.getValue().stream().map(VagrantStagedBox::provider).collect(toList()),
+        contains("virtualbox", "libvirt"));
+    assertThat(boxes.getValue().get(1).path(), is("/myorg/mybox/1.0.0/libvirt/mybox.box"));
+  }
+
+  @Test
+  public void publishRefusesUploadOfOtherVersion() throws Exception {
+    String uploadId = uploadId(start());
+
+    Response response = publish("2.0.0", uploadId);
+
+    assertThat(response.getStatus().getCode(), is(BAD_REQUEST));
+    verify(contentFacet, never()).putVersion(any(), any(), any(), any());
+  }
+
+  @Test
+  public void unknownUploadReturns404() throws Exception {
+    parameters.set(VagrantUploadHandler.UPLOAD_ID, "missing");
+    when(request.getAction()).thenReturn("HEAD");
+
+    assertThat(underTest.handle(context).getStatus().getCode(), is(NOT_FOUND));
+  }
+
+  @Test
+  public void plainRequestsPassThrough() throws Exception {
+    when(request.getAction()).thenReturn("PUT");
+
+    underTest.handle(context);
+
+    verify(context).proceed();
+  }
+
+  private Response start() throws Exception {
+    when(request.getAction()).thenReturn("POST");
+    return underTest.handle(context);
+  }
+
+  private Response start(final long length, final long partSize) throws Exception {
+    headers.set(VagrantUploadHandler.UPLOAD_LENGTH, Long.toString(length));
+    headers.set(VagrantUploadHandler.UPLOAD_PART_SIZE, Long.toString(partSize));
+    try {
+      return start();
+    }
+    finally {
+      headers.remove(VagrantUploadHandler.UPLOAD_LENGTH);
+      headers.remove(VagrantUploadHandler.UPLOAD_PART_SIZE);
+    }
+  }
+
+  private Response chunk(final String contentRange, final String body) throws Exception {
+    when(request.getAction()).thenReturn("PUT");
+    headers.set("Content-Range", contentRange);
+    when(request.getPayload())
+        .thenReturn(new BytesPayload(body.getBytes(StandardCharsets.UTF_8), "application/octet-stream"));
+    return underTest.handle(context);
+  }
+
+  private Response part(final int partNumber, final String body) throws Exception {
+    parameters.set(VagrantUploadHandler.PART_NUMBER, Integer.toString(partNumber));
+    try {
+      when(request.getAction()).thenReturn("PUT");
+      when(request.getPayload())
+          .thenReturn(new BytesPayload(body.getBytes(StandardCharsets.UTF_8), "application/octet-stream"));
+      return underTest.handle(context);
+    }
+    finally {
+      parameters.remove(VagrantUploadHandler.PART_NUMBER);
+    }
+  }
+
+  private String uploadedBox(final String provider) throws Exception {
+    when(tokenState.getTokens()).thenReturn(boxFileTokens(provider));
+    String uploadId = uploadId(start());
+    parameters.set(VagrantUploadHandler.UPLOAD_ID, uploadId);
+    chunk("bytes 0-4/5", "hello");
+    parameters.remove(VagrantUploadHandler.UPLOAD_ID);
+    return uploadId;
+  }
+
+  private Response publish(final String version, final String... uploadIds) throws Exception {
+    Map<String, String> tokens = new HashMap<>();
+    tokens.put("org", "myorg");
+    tokens.put("name", "mybox");
+    tokens.put("version", version);
+    when(tokenState.getTokens()).thenReturn(tokens);
+    Parameters publishParameters = mock(Parameters.class);
+    when(publishParameters.getAll(VagrantUploadHandler.UPLOAD_ID)).thenReturn(asList(uploadIds));
+    when(request.getParameters()).thenReturn(publishParameters);
+    when(request.getAction()).thenReturn("POST");
+    return underTest.handle(context);
+  }
+
+  private static String uploadId(final Response started) {
+    String location = started.getHeaders().get("Location");
+    return location.substring(location.indexOf("uploadId=") + "uploadId=".length());
+  }
+
+  private static Map<String, String> boxFileTokens() {
+    return boxFileTokens("virtualbox");
+  }
+
+  private static Map<String, String> boxFileTokens(final String provider) {
+    Map<String, String> tokens = new HashMap<>();
+    tokens.put("org", "myorg");
+    tokens.put("name", "mybox");
+    tokens.put("version", "1.0.0");
+    tokens.put("provider", provider);
+    tokens.put("filename", "mybox");
+    return tokens;
+  }
+}
@@ -0,0 +1,185 @@
+package org.sonatype.nexus.plugins.vagrant.datastore.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+
+import com.google.common.hash.Hashing;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+import static org.sonatype.nexus.common.hash.HashAlgorithm.SHA256;
+
+public class VagrantUploadSessionTest
+    extends TestSupport
+{
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path stagingDirectory;
+
+  private VagrantUploadSession underTest;
+
+  private VagrantUploadSession parts;
+
+  @Before
+  public void setUp() throws Exception {
+    stagingDirectory = temporaryFolder.newFolder().toPath();
+    underTest = new VagrantUploadSession("upload-1", "vagrant-local", "/myorg/mybox/1.0.0/virtualbox/mybox.box",
+        "alice", stagingDirectory.resolve("upload-1.part"), -1, -1);
+    // "hello world" in parts "hello " and "world"
+    parts = new VagrantUploadSession("upload-2", "vagrant-local", "/myorg/mybox/1.0.0/libvirt/mybox.box",
+        "alice", stagingDirectory.resolve("upload-2.part"), 11, 6);
+  }
+
+  @Test
+  public void chunkAfterCloseDoesNotRecreateFile() throws Exception {
+    underTest.append(0, 5, -1, stream("hello"));
+    underTest.deleteFile();
+
+    try {
+      underTest.append(5, 6, -1, stream(" world"));
+      fail("expected the closed upload to refuse the chunk");
+    }
+    catch (IllegalStateException expected) {
+      // refused
+    }
+
+    assertThat(stagedFiles(), is(0L));
+  }
+
+  @Test
+  public void chunkBeyondDeclaredSizeIsRefused() throws Exception {
+    try {
+      parts.append(0, 12, -1, stream("hello world!"));
+      fail("expected the chunk to be refused");
+    }
+    catch (IllegalStateException expected) {
+      // refused
+    }
+
+    assertThat(parts.offset(), is(0L));
+  }
+
+  @Test
+  public void commitIsRefusedUntilEveryPartIsIn() throws Exception {
+    assertThat(parts.partCount(), is(2));
+    assertThat(parts.writePart(2, stream("world")), is(0L));
+    try {
+      parts.complete();
+      fail("expected the upload missing part 1 not to complete");
+    }
+    catch (IllegalStateException expected) {
+      // refused
+    }
+
+    assertThat(parts.writePart(1, stream("hello ")), is(11L));
+    assertThat(parts.complete().get(SHA256),
+        is(Hashing.sha256().hashString("hello world", StandardCharsets.UTF_8)));
+    assertThat(new String(Files.readAllBytes(parts.file()), StandardCharsets.UTF_8), is("hello world"));
+  }
+
+  @Test
+  public void commitIsRefusedWhileLastPartIsBeingWritten() throws Exception {
+    parts.writePart(1, stream("hello "));
+
+    InputStream committingStream = new ByteArrayInputStream("world".getBytes(StandardCharsets.UTF_8))
+    {
+      @Override
+      public synchronized int read(final byte[] b, final int off, final int len) {
+        try {
+          parts.complete();
+          fail("expected the upload not to complete while its last part is written");
+        }
+        catch (IllegalStateException expected) {
+          // refused
+        }
+        return super.read(b, off, len);
+      }
+    };
+
+    assertThat(parts.writePart(2, committingStream), is(11L));
+    assertThat(parts.complete().get(SHA256),
+        is(Hashing.sha256().hashString("hello world", StandardCharsets.UTF_8)));
+  }
+
+  @Test
+  public void partOfWrongSizeIsDroppedAndMayBeSentAgain() throws Exception {
+    for (String wrong : new String[]{"hello", "hello w"}) {
+      try {
+        parts.writePart(1, stream(wrong));
+        fail("expected part " + wrong + " to be refused");
+      }
+      catch (IllegalStateException expected) {
+        // refused
+      }
+    }
+
+    parts.writePart(1, stream("hello "));
+    assertThat(parts.writePart(2, stream("world")), is(11L));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void uploadWithoutDeclaredPartsRefusesParts() throws Exception {
+    underTest.writePart(1, stream("hello"));
+  }
+
+  @Test
+  public void partWrittenWhileClosingIsDropped() throws Exception {
+    parts.writePart(2, stream("world"));
+
+    // the upload is aborted while part 1 is still being written
+    InputStream closingStream = new ByteArrayInputStream("hello ".getBytes(StandardCharsets.UTF_8))
+    {
+      @Override
+      public synchronized int read(final byte[] b, final int off, final int len) {
+        try {
+          parts.deleteFile();
+        }
+        catch (IOException e) {
+          throw new IllegalStateException(e);
+        }
+        return super.read(b, off, len);
+      }
+    };
+
+    try {
+      parts.writePart(1, closingStream);
+      fail("expected the closed upload to refuse the part");
+    }
+    catch (IllegalStateException expected) {
+      // refused
+    }
+
+    assertThat(stagedFiles(), is(0L));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void closedUploadCannotComplete() throws Exception {
+    underTest.append(0, 5, 5, stream("hello"));
+    underTest.deleteFile();
+
+    underTest.complete();
+  }
+
+  private long stagedFiles() throws IOException {
+    try (Stream<Path> files = Files.list(stagingDirectory)) {
+      return files.count();
+    }
+  }
+
+  private static InputStream stream(final String text) {
+    return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,91 @@
+package org.sonatype.nexus.plugins.vagrant.datastore.internal;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Lock;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+
+public class VagrantVersionLocksTest
+    extends TestSupport
+{
+  private final VagrantVersionLocks underTest = new VagrantVersionLocks(1024);
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void providersOfOneVersionAreWrittenOneAtATime() throws Exception {
+    CountDownLatch virtualboxLocked = new CountDownLatch(1);
+    CountDownLatch virtualboxDone = new CountDownLatch(1);
+
+    // the virtualbox upload holds the version while the libvirt upload of the same version arrives
+    Future<?> virtualbox = executor.submit(() -> {
+      Lock lock = underTest.lock("myorg", "mybox", "1.0.0");
+      try {
+        virtualboxLocked.countDown();
+        virtualboxDone.await();
+      }
+      finally {
+        lock.unlock();
+      }
+      return null;
+    });
+    virtualboxLocked.await();
+
+    Future<Boolean> libvirt = executor.submit(() -> {
+      Lock lock = underTest.lock("myorg", "mybox", "1.0.0");
+      lock.unlock();
+      return true;
+    });
+    try {
+      libvirt.get(100, TimeUnit.MILLISECONDS);
+      fail("expected the second provider to wait for the first");
+    }
+    catch (TimeoutException expected) {
+      // still waiting
+    }
+
+    virtualboxDone.countDown();
+    virtualbox.get(5, TimeUnit.SECONDS);
+    assertThat(libvirt.get(5, TimeUnit.SECONDS), is(true));
+  }
+
+  @Test
+  public void deleteOfOneVersionDoesNotStallUploadsOfOthers() throws Exception {
+    Lock deleting = underTest.lock("myorg", "mybox", "1.0.0");
+    try {
+      Future<Boolean> upload = executor.submit(() -> {
+        Lock lock = underTest.lock("myorg", "mybox", "2.0.0");
+        lock.unlock();
+        return true;
+      });
+      assertThat(upload.get(5, TimeUnit.SECONDS), is(true));
+
+      Future<Boolean> otherBox = executor.submit(() -> {
+        Lock lock = underTest.lock("myorg", "otherbox", "1.0.0");
+        lock.unlock();
+        return true;
+      });
+      assertThat(otherBox.get(5, TimeUnit.SECONDS), is(true));
+    }
+    finally {
+      deleting.unlock();
+    }
+  }
+}
@@ -0,0 +1,54 @@
+package org.sonatype.nexus.plugins.vagrant.datastore.internal.store;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+import org.sonatype.nexus.plugins.vagrant.datastore.VagrantBoxAsset;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+public class VagrantCatalogDataTest
+    extends TestSupport
+{
+  @Test
+  public void entriesRoundTrip() {
+    VagrantCatalogData catalog = VagrantCatalogData.of(1, "myorg", "mybox", Arrays.asList(
+        new VagrantCatalogEntry("/myorg/mybox/1.0.0/virtualbox/mybox.box", "1.0.0", "virtualbox", "aaa111"),
+        new VagrantCatalogEntry("/myorg/mybox/1.0.0/libvirt/mybox.box", "1.0.0", "libvirt", null)), "stamp1", 100);
+
+    VagrantCatalogData read = new VagrantCatalogData();
+    read.setEntries(VagrantCatalogData.encode(catalog.assets()));
+    List<VagrantBoxAsset> assets = read.assets();
+
+    assertThat(assets, hasSize(2));
+    assertThat(assets.get(0).path(), is("/myorg/mybox/1.0.0/virtualbox/mybox.box"));
+    assertThat(assets.get(0).version(), is("1.0.0"));
+    assertThat(assets.get(0).provider(), is("virtualbox"));
+    assertThat(assets.get(0).sha256(), is("aaa111"));
+    assertThat(assets.get(1).provider(), is("libvirt"));
+    assertThat(assets.get(1).sha256(), is(nullValue()));
+  }
+
+  @Test
+  public void ofRecordsSizeStampAndTimestamp() {
+    VagrantCatalogData catalog = VagrantCatalogData.of(1, "myorg", "mybox", Arrays.asList(
+        new VagrantCatalogEntry("/myorg/mybox/1.0.0/virtualbox/mybox.box", "1.0.0", "virtualbox", "aaa111"),
+        new VagrantCatalogEntry("/myorg/mybox/1.1.0/virtualbox/mybox.box", "1.1.0", "virtualbox", "bbb222")),
+        "stamp1", 100);
+
+    assertThat(catalog.assets().get(1).version(), is("1.1.0"));
+    assertThat(catalog.boxCount(), is(2));
+    assertThat(catalog.renderedSize(), is(100L));
+    assertThat(catalog.stamp(), is("stamp1"));
+    assertThat(catalog.lastUpdated(), is(notNullValue()));
+    assertThat(catalog.namespace(), is("myorg"));
+    assertThat(catalog.name(), is("mybox"));
+  }
+}
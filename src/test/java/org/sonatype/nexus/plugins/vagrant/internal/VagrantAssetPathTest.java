@@ -0,0 +1,67 @@
+package org.sonatype.nexus.plugins.vagrant.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+public class VagrantAssetPathTest
+    extends TestSupport
+{
+  @Test
+  public void parsesSegments() {
+    VagrantAssetPath assetPath = VagrantAssetPath.parse("/myorg/mybox/1.0.0/virtualbox/mybox.box");
+    assertThat(assetPath, notNullValue());
+    assertThat(assetPath.org(), is("myorg"));
+    assertThat(assetPath.name(), is("mybox"));
+    assertThat(assetPath.version(), is("1.0.0"));
+    assertThat(assetPath.provider(), is("virtualbox"));
+    assertThat(assetPath.filename(), is("mybox"));
+  }
+
+  @Test
+  public void rejectsNonBoxPaths() {
+    assertThat(VagrantAssetPath.parse(""), nullValue());
+    assertThat(VagrantAssetPath.parse("/myorg/mybox"), nullValue());
+    assertThat(VagrantAssetPath.parse("myorg/mybox/1.0.0/virtualbox/mybox.box"), nullValue());
+    assertThat(VagrantAssetPath.parse("/myorg/mybox/1.0.0/virtualbox/mybox.zip"), nullValue());
+    assertThat(VagrantAssetPath.parse("/myorg/mybox/1.0.0/virtualbox/.box"), nullValue());
+    assertThat(VagrantAssetPath.parse("/myorg//1.0.0/virtualbox/mybox.box"), nullValue());
+    assertThat(VagrantAssetPath.parse("/myorg/mybox/1.0.0/virtualbox/extra/mybox.box"), nullValue());
+  }
+
+  @Test
+  public void matchesBoxInPlace() {
+    VagrantAssetPath assetPath = VagrantAssetPath.parse("/myorg/mybox/1.0.0/virtualbox/mybox.box");
+    assertThat(assetPath.isBox("myorg", "mybox"), is(true));
+    assertThat(assetPath.isBox("myorg", "mybo"), is(false));
+    assertThat(assetPath.isBox("myorg", "myboxes"), is(false));
+    assertThat(assetPath.isBox("other", "mybox"), is(false));
+  }
+
+  @Test
+  public void formatsFromTokens() {
+    Map<String, String> tokens = new HashMap<>();
+    tokens.put("org", "myorg");
+    tokens.put("name", "mybox");
+    tokens.put("version", "1.0.0");
+    tokens.put("provider", "virtualbox");
+    tokens.put("filename", "mybox");
+    assertThat(VagrantAssetPath.format(tokens), is("/myorg/mybox/1.0.0/virtualbox/mybox.box"));
+  }
+
+  @Test
+  public void formatRoundTrips() {
+    String path = VagrantAssetPath.format("org", "box", "2.1.0-rc.1", "libvirt", "box-x86_64");
+    VagrantAssetPath assetPath = VagrantAssetPath.parse(path);
+    assertThat(assetPath.version(), is("2.1.0-rc.1"));
+    assertThat(assetPath.filename(), is("box-x86_64"));
+  }
+}
@@ -1,13 +1,14 @@
 package org.sonatype.nexus.plugins.vagrant.internal;
 
+import java.io.ByteArrayOutputStream;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 
 import org.sonatype.goodies.testsupport.TestSupport;
-import org.sonatype.nexus.plugins.vagrant.model.VagrantBoxMetadata;
-import org.sonatype.nexus.plugins.vagrant.model.VagrantBoxProvider;
-import org.sonatype.nexus.plugins.vagrant.model.VagrantBoxVersion;
+import org.sonatype.nexus.plugins.vagrant.datastore.VagrantBoxAsset;
+import org.sonatype.nexus.plugins.vagrant.datastore.VagrantBoxCatalog;
 import org.sonatype.nexus.repository.content.AssetBlob;
 import org.sonatype.nexus.repository.content.fluent.FluentAsset;
 
@@ -19,6 +20,7 @@ import org.mockito.Mock;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 public class VagrantMetadataBuilderTest
@@ -37,7 +39,10 @@ public class VagrantMetadataBuilderTest
   private FluentAsset asset3;
 
   @Mock
-  private FluentAsset assetDifferentBox;
+  private VagrantBoxAsset boxAsset1;
+
+  @Mock
+  private VagrantBoxAsset boxAsset2;
 
   @Mock
   private AssetBlob blob1;
@@ -50,122 +55,202 @@ public class VagrantMetadataBuilderTest
   @Before
   public void setUp() {
     underTest = new VagrantMetadataBuilder();
+  }
 
-    when(asset1.path()).thenReturn("/myorg/mybox/1.0.0/virtualbox/mybox.box");
+  @Test
+  public void checksumReadsAssetBlob() {
     when(asset1.blob()).thenReturn(Optional.of(blob1));
-    when(blob1.checksums()).thenReturn(Collections.singletonMap("SHA256", "aaa111"));
+    when(blob1.checksums()).thenReturn(Collections.singletonMap("sha256", "aaa111"));
+
+    assertThat(underTest.checksum(asset1), is("aaa111"));
+  }
 
-    when(asset2.path()).thenReturn("/myorg/mybox/1.0.0/libvirt/mybox.box");
+  @Test
+  public void checksumReadsLegacyKey() {
+    // blob checksums written under the legacy upper-case key
     when(asset2.blob()).thenReturn(Optional.of(blob2));
     when(blob2.checksums()).thenReturn(Collections.singletonMap("SHA256", "bbb222"));
 
-    when(asset3.path()).thenReturn("/myorg/mybox/2.0.0/virtualbox/mybox.box");
-    when(asset3.blob()).thenReturn(Optional.empty());
-
-    when(assetDifferentBox.path()).thenReturn("/myorg/otherbox/1.0.0/virtualbox/otherbox.box");
-    when(assetDifferentBox.blob()).thenReturn(Optional.empty());
+    assertThat(underTest.checksum(asset2), is("bbb222"));
   }
 
   @Test
-  public void buildMetadataSetsNameAndDescription() {
-    VagrantBoxMetadata metadata = underTest.buildMetadata(BASE_URL, "myorg", "mybox",
-        Collections.singletonList(asset1));
+  public void checksumAbsentWithoutBlob() {
+    when(asset3.blob()).thenReturn(Optional.empty());
 
-    assertThat(metadata.getName(), is("myorg/mybox"));
-    assertThat(metadata.getDescription(), is("Vagrant box myorg/mybox"));
+    assertThat(underTest.checksum(asset3), is(nullValue()));
   }
 
   @Test
-  public void buildMetadataGroupsProvidersByVersion() {
-    VagrantBoxMetadata metadata = underTest.buildMetadata(BASE_URL, "myorg", "mybox",
-        Arrays.asList(asset1, asset2, asset3));
-
-    assertThat(metadata.getVersions(), hasSize(2));
-
-    VagrantBoxVersion v1 = metadata.getVersions().get(0);
-    assertThat(v1.getVersion(), is("1.0.0"));
-    assertThat(v1.getStatus(), is("active"));
-    assertThat(v1.getProviders(), hasSize(2));
-    assertThat(v1.getProviders().get(0).getName(), is("virtualbox"));
-    assertThat(v1.getProviders().get(1).getName(), is("libvirt"));
-
-    VagrantBoxVersion v2 = metadata.getVersions().get(1);
-    assertThat(v2.getVersion(), is("2.0.0"));
-    assertThat(v2.getProviders(), hasSize(1));
-    assertThat(v2.getProviders().get(0).getName(), is("virtualbox"));
+  public void writeJsonGroupsProvidersByVersion() throws Exception {
+    stubBoxAssets();
+    VagrantBoxAsset boxAsset3 = boxAsset("/myorg/mybox/2.0.0/virtualbox/mybox.box", "2.0.0", "virtualbox", null);
+
+    JsonNode versions = render(Arrays.asList(boxAsset1, boxAsset2, boxAsset3)).get("versions");
+
+    assertThat(versions.size(), is(2));
+    assertThat(versions.get(0).get("version").asText(), is("1.0.0"));
+    assertThat(versions.get(0).get("providers").size(), is(2));
+    assertThat(versions.get(0).get("providers").get(0).get("name").asText(), is("virtualbox"));
+    assertThat(versions.get(0).get("providers").get(1).get("name").asText(), is("libvirt"));
+    assertThat(versions.get(1).get("version").asText(), is("2.0.0"));
+    assertThat(versions.get(1).get("providers").size(), is(1));
   }
 
   @Test
-  public void buildMetadataGeneratesCorrectDownloadUrls() {
-    VagrantBoxMetadata metadata = underTest.buildMetadata(BASE_URL, "myorg", "mybox",
-        Collections.singletonList(asset1));
+  public void writeJsonWritesEmptyVersionsWithoutRows() throws Exception {
+    JsonNode root = render(Collections.emptyList());
 
-    VagrantBoxProvider provider = metadata.getVersions().get(0).getProviders().get(0);
-    assertThat(provider.getUrl(),
-        is("http://nexus:8081/repository/vagrant-local/myorg/mybox/1.0.0/virtualbox/mybox.box"));
+    assertThat(root.get("name").asText(), is("myorg/mybox"));
+    assertThat(root.get("versions").size(), is(0));
   }
 
   @Test
-  public void buildMetadataIncludesChecksumWhenPresent() {
-    VagrantBoxMetadata metadata = underTest.buildMetadata(BASE_URL, "myorg", "mybox",
-        Collections.singletonList(asset1));
-
-    VagrantBoxProvider provider = metadata.getVersions().get(0).getProviders().get(0);
-    assertThat(provider.getChecksumType(), is("sha256"));
-    assertThat(provider.getChecksum(), is("aaa111"));
+  public void writeJsonOrdersSortedRowsSemantically() throws Exception {
+    List<VagrantBoxAsset> sorted = underTest.sortByVersion(Arrays.asList(
+        boxAsset("/myorg/mybox/1.10.0/virtualbox/mybox.box", "1.10.0", "virtualbox", null),
+        boxAsset("/myorg/mybox/2.0.0/virtualbox/mybox.box", "2.0.0", "virtualbox", null),
+        boxAsset("/myorg/mybox/1.9.0/virtualbox/mybox.box", "1.9.0", "virtualbox", null)));
+
+    JsonNode versions = render(sorted).get("versions");
+
+    assertThat(versions.size(), is(3));
+    assertThat(versions.get(0).get("version").asText(), is("1.9.0"));
+    assertThat(versions.get(1).get("version").asText(), is("1.10.0"));
+    assertThat(versions.get(2).get("version").asText(), is("2.0.0"));
   }
 
   @Test
-  public void buildMetadataOmitsChecksumWhenNoBlobPresent() {
-    VagrantBoxMetadata metadata = underTest.buildMetadata(BASE_URL, "myorg", "mybox",
-        Collections.singletonList(asset3));
-
-    VagrantBoxProvider provider = metadata.getVersions().get(0).getProviders().get(0);
-    assertThat(provider.getChecksumType(), is(nullValue()));
-    assertThat(provider.getChecksum(), is(nullValue()));
+  public void sortByVersionKeepsProviderOrderWithinVersion() {
+    when(boxAsset1.version()).thenReturn("2.0.0");
+    when(boxAsset2.version()).thenReturn("1.0.0");
+    VagrantBoxAsset boxAsset3 = mock(VagrantBoxAsset.class);
+    when(boxAsset3.version()).thenReturn("2.0.0");
+
+    assertThat(underTest.sortByVersion(Arrays.asList(boxAsset1, boxAsset2, boxAsset3)),
+        contains(boxAsset2, boxAsset1, boxAsset3));
   }
 
   @Test
-  public void buildMetadataFiltersOutNonMatchingBoxes() {
-    VagrantBoxMetadata metadata = underTest.buildMetadata(BASE_URL, "myorg", "mybox",
-        Arrays.asList(asset1, assetDifferentBox));
-
-    assertThat(metadata.getVersions(), hasSize(1));
-    assertThat(metadata.getVersions().get(0).getProviders(), hasSize(1));
+  public void stampIsIndependentOfRowOrder() {
+    when(boxAsset1.path()).thenReturn("/myorg/mybox/1.0.0/virtualbox/mybox.box");
+    when(boxAsset1.sha256()).thenReturn("aaa111");
+    when(boxAsset2.path()).thenReturn("/myorg/mybox/1.0.0/libvirt/mybox.box");
+    when(boxAsset2.sha256()).thenReturn("bbb222");
+
+    assertThat(underTest.stamp(Arrays.asList(boxAsset1, boxAsset2)),
+        is(underTest.stamp(Arrays.asList(boxAsset2, boxAsset1))));
   }
 
   @Test
-  public void buildMetadataReturnsEmptyVersionsWhenNoAssetsMatch() {
-    VagrantBoxMetadata metadata = underTest.buildMetadata(BASE_URL, "myorg", "mybox",
-        Collections.singletonList(assetDifferentBox));
+  public void stampChangesWithChecksum() {
+    when(boxAsset1.path()).thenReturn("/myorg/mybox/1.0.0/virtualbox/mybox.box");
+    when(boxAsset1.sha256()).thenReturn("aaa111");
+    String stamp = underTest.stamp(Collections.singletonList(boxAsset1));
 
-    assertThat(metadata.getVersions(), is(empty()));
+    when(boxAsset1.sha256()).thenReturn("ccc333");
+    assertThat(underTest.stamp(Collections.singletonList(boxAsset1)), not(stamp));
   }
 
   @Test
-  public void buildMetadataIgnoresNonBoxPaths() {
-    when(asset1.path()).thenReturn("/myorg/mybox/readme.txt");
+  public void etagChangesWithBaseUrlAndStamp() {
+    String etag = underTest.etag(BASE_URL, "stamp1");
 
-    VagrantBoxMetadata metadata = underTest.buildMetadata(BASE_URL, "myorg", "mybox",
-        Collections.singletonList(asset1));
-
-    assertThat(metadata.getVersions(), is(empty()));
+    assertThat(underTest.etag(BASE_URL, "stamp1"), is(etag));
+    assertThat(underTest.etag("https://other/repository/vagrant-local", "stamp1"), not(etag));
+    assertThat(underTest.etag(BASE_URL, "stamp2"), not(etag));
   }
 
   @Test
-  public void toJsonProducesValidJson() throws Exception {
-    VagrantBoxMetadata metadata = underTest.buildMetadata(BASE_URL, "myorg", "mybox",
-        Arrays.asList(asset1, asset2));
+  public void writeJsonStreamsCompactCatalog() throws Exception {
+    stubBoxAssets();
 
-    String json = underTest.toJson(metadata);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    underTest.writeJson(BASE_URL, "myorg", "mybox", Arrays.asList(boxAsset1, boxAsset2), out);
+    String json = out.toString("UTF-8");
     JsonNode root = MAPPER.readTree(json);
 
+    assertThat(json, not(containsString("\n")));
     assertThat(root.get("name").asText(), is("myorg/mybox"));
-    assertThat(root.get("versions").isArray(), is(true));
+    assertThat(root.get("description").asText(), is("Vagrant box myorg/mybox"));
     assertThat(root.get("versions").size(), is(1));
 
     JsonNode version = root.get("versions").get(0);
     assertThat(version.get("version").asText(), is("1.0.0"));
+    assertThat(version.get("status").asText(), is("active"));
     assertThat(version.get("providers").size(), is(2));
+
+    JsonNode virtualbox = version.get("providers").get(0);
+    assertThat(virtualbox.get("name").asText(), is("virtualbox"));
+    assertThat(virtualbox.get("url").asText(),
+        is("http://nexus:8081/repository/vagrant-local/myorg/mybox/1.0.0/virtualbox/mybox.box"));
+    assertThat(virtualbox.get("checksum_type").asText(), is("sha256"));
+    assertThat(virtualbox.get("checksum").asText(), is("aaa111"));
+    assertThat(version.get("providers").get(1).has("checksum"), is(false));
+  }
+
+  @Test
+  public void renderedSizeMatchesWrittenJson() throws Exception {
+    stubBoxAssets();
+    List<VagrantBoxAsset> boxAssets = Arrays.asList(boxAsset1, boxAsset2);
+    VagrantBoxCatalog catalog = mock(VagrantBoxCatalog.class);
+    when(catalog.boxCount()).thenReturn(2);
+    when(catalog.renderedSize()).thenReturn(underTest.renderedSize("myorg", "mybox", boxAssets));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    underTest.writeJson(BASE_URL, "myorg", "mybox", boxAssets, out);
+
+    assertThat(underTest.renderedSize(catalog, BASE_URL), is((long) out.size()));
+  }
+
+  @Test
+  public void renderedSizeUnknownWhenNotDerivable() {
+    VagrantBoxCatalog catalog = mock(VagrantBoxCatalog.class);
+    when(catalog.boxCount()).thenReturn(2);
+    assertThat(underTest.renderedSize(catalog, BASE_URL), is(-1L));
+
+    when(catalog.renderedSize()).thenReturn(100L);
+    assertThat(underTest.renderedSize(catalog, "http://nexus/repository/say\"what\""), is(-1L));
+    assertThat(new VagrantMetadataBuilder(true).renderedSize(catalog, BASE_URL), is(-1L));
+  }
+
+  @Test
+  public void writeJsonIndentsWhenPrettyEnabled() throws Exception {
+    stubBoxAssets();
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new VagrantMetadataBuilder(true).writeJson(BASE_URL, "myorg", "mybox", Arrays.asList(boxAsset1, boxAsset2), out);
+
+    assertThat(out.toString("UTF-8"), containsString("\n"));
+    assertThat(MAPPER.readTree(out.toByteArray()).get("versions").size(), is(1));
+  }
+
+  private void stubBoxAssets() {
+    when(boxAsset1.path()).thenReturn("/myorg/mybox/1.0.0/virtualbox/mybox.box");
+    when(boxAsset1.version()).thenReturn("1.0.0");
+    when(boxAsset1.provider()).thenReturn("virtualbox");
+    when(boxAsset1.sha256()).thenReturn("aaa111");
+    when(boxAsset2.path()).thenReturn("/myorg/mybox/1.0.0/libvirt/mybox.box");
+    when(boxAsset2.version()).thenReturn("1.0.0");
+    when(boxAsset2.provider()).thenReturn("libvirt");
+  }
+
+  private JsonNode render(final List<VagrantBoxAsset> boxAssets) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    underTest.writeJson(BASE_URL, "myorg", "mybox", boxAssets, out);
+    return MAPPER.readTree(out.toByteArray());
+  }
+
+  private static VagrantBoxAsset boxAsset(final String path,
+                                          final String version,
+                                          final String provider,
+                                          final String sha256)
+  {
+    VagrantBoxAsset boxAsset = mock(VagrantBoxAsset.class);
+    when(boxAsset.path()).thenReturn(path);
+    when(boxAsset.version()).thenReturn(version);
+    when(boxAsset.provider()).thenReturn(provider);
+    when(boxAsset.sha256()).thenReturn(sha256);
+    return boxAsset;
   }
 }
@@ -0,0 +1,70 @@
+package org.sonatype.nexus.plugins.vagrant.internal;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+public class VagrantVersionTest
+    extends TestSupport
+{
+  @Test
+  public void numericSegmentsCompareNumerically() {
+    assertThat(compare("1.10.0", "1.9.0"), greaterThan(0));
+    assertThat(compare("2.0.0", "10.0.0"), lessThan(0));
+  }
+
+  @Test
+  public void missingSegmentsCountAsZero() {
+    assertThat(compare("1.0", "1.0.1"), lessThan(0));
+    assertThat(compare("1.1", "1.0.9"), greaterThan(0));
+  }
+
+  @Test
+  public void prereleaseSortsBeforeRelease() {
+    assertThat(compare("1.0.0-rc.1", "1.0.0"), lessThan(0));
+    assertThat(compare("1.0.0-rc.1", "0.9.9"), greaterThan(0));
+  }
+
+  @Test
+  public void prereleaseIdentifiersFollowSemver() {
+    assertThat(compare("1.0.0-alpha", "1.0.0-alpha.1"), lessThan(0));
+    assertThat(compare("1.0.0-alpha.2", "1.0.0-alpha.10"), lessThan(0));
+    assertThat(compare("1.0.0-1", "1.0.0-alpha"), lessThan(0));
+    assertThat(compare("1.0.0-alpha", "1.0.0-beta"), lessThan(0));
+  }
+
+  @Test
+  public void longDateSegmentsDoNotOverflow() {
+    assertThat(compare("20240115123045999999.0", "20240115123046000000.0"), lessThan(0));
+  }
+
+  @Test
+  public void buildMetadataOnlyBreaksTies() {
+    assertThat(compare("1.0.0+build.2", "1.0.1"), lessThan(0));
+    assertThat(compare("1.0.0", "1.0.0"), is(0));
+  }
+
+  @Test
+  public void sortsMixedVersions() {
+    List<String> sorted = Arrays.asList("1.10.0", "1.0.0", "1.2.0-rc.1", "1.2.0", "1.9.0", "0.1")
+        .stream()
+        .sorted(VagrantVersion.ORDER)
+        .collect(Collectors.toList());
+
+    assertThat(sorted, contains("0.1", "1.0.0", "1.2.0-rc.1", "1.2.0", "1.9.0", "1.10.0"));
+  }
+
+  private static int compare(final String a, final String b) {
+    return VagrantVersion.parse(a).compareTo(VagrantVersion.parse(b));
+  }
+}